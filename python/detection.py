@@ -10,72 +10,308 @@ import tensorflow as tf
 tf.get_logger().setLevel('ERROR')
 tf.compat.v1.logging.set_verbosity(tf.compat.v1.logging.ERROR)
 
+import hashlib
+import tempfile
 import numpy as np
 from PIL import Image
+from concurrent.futures import ThreadPoolExecutor
+import worker_protocol as protocol
 import sys
 
 MODEL_PATH = "models/best_model.h5"
+INPUT_SIZE = 224
+DEFAULT_BATCH_SIZE = 32
+METADATA_SUFFIX = ".meta"
+IMAGE_EXTENSIONS = ('.png', '.jpg', '.jpeg', '.bmp', '.gif')
+
+# Set by the GUI when several workers share the machine, so they do not oversubscribe the cores
+if os.environ.get('PARKINSON_INTRA_OP_THREADS'):
+    tf.config.threading.set_intra_op_parallelism_threads(int(os.environ['PARKINSON_INTRA_OP_THREADS']))
+    tf.config.threading.set_inter_op_parallelism_threads(1)
+
+def subsampling_factors(width, height):
+    # Keep at least twice the input size per axis before the bicubic resize.
+    # Must stay in sync with ImagePreprocessor.subsampling() on the Java side.
+    return max(1, width // (INPUT_SIZE * 2)), max(1, height // (INPUT_SIZE * 2))
+
+def box_reduce(img, step_x, step_y):
+    # Mean of each step_x by step_y block, rounded half up; blocks on the right and bottom
+    # edges may be smaller and average what they have. Integer arithmetic, the same as
+    # ImagePreprocessor.reduce() on the Java side, so both give identical bytes.
+    pixels = np.asarray(img, dtype=np.uint32)
+    height, width = pixels.shape[:2]
+    rows = np.arange(0, height, step_y)
+    cols = np.arange(0, width, step_x)
+    sums = np.add.reduceat(np.add.reduceat(pixels, rows, axis=0), cols, axis=1)
+    counts = np.outer(np.diff(np.append(rows, height)), np.diff(np.append(cols, width)))[:, :, None]
+    return Image.fromarray(((sums + counts // 2) // counts).astype(np.uint8))
+
+def open_rgb_image(image_path):
+    img = Image.open(image_path)
+    if img.mode != 'RGB':
+        img = img.convert('RGB')
+    step_x, step_y = subsampling_factors(*img.size)
+    if step_x > 1 or step_y > 1:
+        # Averaged rather than picking every step-th pixel, which could skip thin pen strokes
+        img = box_reduce(img, step_x, step_y)
+    return img
+
+def to_model_array(img):
+    img = img.resize((INPUT_SIZE, INPUT_SIZE))
+    return np.array(img) / 255.0
 
 def load_and_preprocess_image(image_path):
     try:
-        img = Image.open(image_path)
-        if img.mode != 'RGB':
-            img = img.convert('RGB')
-        img = img.resize((224, 224))
-        img_array = np.array(img) / 255.0
+        img_array = to_model_array(open_rgb_image(image_path))
         img_array = np.expand_dims(img_array, axis=0)
         return img_array
     except Exception as e:
         print(f"Error loading image: {e}")
         return None
 
-def get_model_info(model_path, model):
+def load_image_array(image_path):
+    # Batch variant of load_and_preprocess_image: no batch axis, raises instead of printing
+    return to_model_array(open_rgb_image(image_path))
+
+class TensorRing:
+    """
+    The memory-mapped file the GUI preprocesses into (see TensorRing.java for the layout).
+    Tensors are read in place; each slot's probability and inference time are written back.
+    """
+    MAGIC = 0x524E4731
+    VERSION = 1
+    HEADER_BYTES = 64
+
+    def __init__(self, path):
+        magic, version, slots, tensor_length = (int(v) for v in np.fromfile(path, dtype='<i4', count=4))
+        if magic != self.MAGIC or version != self.VERSION:
+            raise ValueError(f"Not a version {self.VERSION} tensor ring: {path}")
+        if tensor_length != INPUT_SIZE * INPUT_SIZE * 3:
+            raise ValueError(f"Ring tensors have {tensor_length} values, expected {INPUT_SIZE * INPUT_SIZE * 3}")
+
+        self.tensors = np.memmap(path, dtype='<f4', mode='r', offset=self.HEADER_BYTES,
+                                 shape=(slots, INPUT_SIZE, INPUT_SIZE, 3))
+        self.results = np.memmap(path, dtype='<f4', mode='r+', offset=self.HEADER_BYTES + slots * tensor_length * 4,
+                                 shape=(slots, 2))
+
+    def run(self, model, start, count):
+        probabilities, per_image_time = predict_arrays(model, self.tensors[start:start + count])
+        self.results[start:start + count, 0] = probabilities
+        self.results[start:start + count, 1] = per_image_time
+
+def classify(probability):
+    if probability > 0.5:
+        return "Parkinson's Disease", probability * 100
+    return "Healthy", (1 - probability) * 100
+
+def file_sha256(path):
+    digest = hashlib.sha256()
+    with open(path, 'rb') as f:
+        for block in iter(lambda: f.read(64 * 1024), b''):
+            digest.update(block)
+    return digest.hexdigest()
+
+def read_model_metadata(model_path):
     try:
-        size_bytes = os.path.getsize(model_path)
-        size_mb = size_bytes / (1024 * 1024)
-        num_layers = len(model.layers)
-        total_params = np.sum([tf.keras.backend.count_params(w) for w in model.weights])
-        return size_mb, num_layers, total_params
-    except Exception:
-        return None, None, None
+        with open(model_path + METADATA_SUFFIX) as f:
+            return dict(line.strip().split('=', 1) for line in f if '=' in line)
+    except OSError:
+        return None
 
-def predict_parkinson(model_path, image_path):
+def ensure_model_metadata(model_path, model):
+    """
+    Model size, layer and parameter counts only change with the model file, so they are
+    computed once per version and kept next to it in <model>.meta (Java properties format,
+    read by ModelDescriptor). A stored entry is reused while size and mtime still match.
+    """
+    stat = os.stat(model_path)
+    mtime_ms = stat.st_mtime_ns // 1_000_000
+    metadata = read_model_metadata(model_path)
+    if metadata and metadata.get('size_bytes') == str(stat.st_size) and metadata.get('mtime_ms') == str(mtime_ms):
+        return metadata
+
+    metadata = {
+        'sha256': file_sha256(model_path),
+        'size_bytes': str(stat.st_size),
+        'mtime_ms': str(mtime_ms),
+        'layers': str(len(model.layers)),
+        'parameters': str(int(np.sum([tf.keras.backend.count_params(w) for w in model.weights]))),
+    }
+    # Pool workers start together, so each writes its own temporary file
+    fd, temp_path = tempfile.mkstemp(prefix=os.path.basename(model_path) + METADATA_SUFFIX + '.',
+                                     suffix='.tmp', dir=os.path.dirname(os.path.abspath(model_path)))
     try:
-        model = tf.keras.models.load_model(model_path, compile=False)
-        img_array = load_and_preprocess_image(image_path)
-        if img_array is None:
-            return
+        with os.fdopen(fd, 'w') as f:
+            for key, value in metadata.items():
+                f.write(f"{key}={value}\n")
+        os.replace(temp_path, model_path + METADATA_SUFFIX)
+    except OSError:
+        # Another worker got there first (on Windows the file can be held open while it reads);
+        # its metadata is for the same model version
+        if not os.path.exists(model_path + METADATA_SUFFIX):
+            raise
+    finally:
+        if os.path.exists(temp_path):
+            os.remove(temp_path)
+    return metadata
+
+def load_model(model_path):
+    model = tf.keras.models.load_model(model_path, compile=False)
+    # Run one dummy prediction so graph tracing happens before the first real request
+    model.predict(np.zeros((1, INPUT_SIZE, INPUT_SIZE, 3)), verbose=0)
+    ensure_model_metadata(model_path, model)
+    return model
 
-        start_time = time.time()
-        prediction = model.predict(img_array, verbose=0)
-        inference_time = (time.time() - start_time) * 1000  # ms
+def ignore_stage(stage):
+    pass
 
-        probability = float(prediction[0][0])
+def predict_image(model, image_path, on_stage=ignore_stage):
+    on_stage(protocol.DECODING)
+    img = open_rgb_image(image_path)
+    on_stage(protocol.PREPROCESSING)
+    img_array = np.expand_dims(to_model_array(img), axis=0)
+    on_stage(protocol.PREDICTING)
+    probabilities, inference_time = predict_arrays(model, img_array)
+    return probabilities[0], inference_time
 
-        if probability > 0.5:
-            result = "Parkinson's Disease"
-            confidence = probability * 100
-        else:
-            result = "Healthy"
-            confidence = (1 - probability) * 100
+def print_result(probability, inference_time):
+    result, confidence = classify(probability)
+    # Print raw values only (each in new line); model details live in the .meta file
+    print(result)
+    print(f"{confidence:.2f}")
+    print(f"{probability:.4f}")
+    print(f"{inference_time:.2f}")
 
-        size_mb, num_layers, total_params = get_model_info(model_path, model)
+def predict_batch(model, image_paths, batch_size=DEFAULT_BATCH_SIZE, on_stage=ignore_stage):
+    """
+    Decodes the images on a thread pool (PIL releases the GIL while decoding), then runs
+    one model.predict per batch_size images. Yields (probability, inference_ms, error) per
+    image, in order; error is set and the rest None for images that could not be loaded.
+    """
 
-        # Print raw values only (each in new line)
-        print(result)
-        print(f"{confidence:.2f}")
-        print(f"{probability:.4f}")
-        print(f"{inference_time:.2f}")
-        print(f"{size_mb:.2f}")
-        print(num_layers)
-        print(total_params)
+    def safe_load(path):
+        try:
+            return load_image_array(path), None
+        except Exception as e:
+            return None, str(e).replace('\n', ' ').replace('\t', ' ')
 
+    with ThreadPoolExecutor(max_workers=min(8, os.cpu_count() or 1)) as pool:
+        for start in range(0, len(image_paths), batch_size):
+            chunk = image_paths[start:start + batch_size]
+            on_stage(protocol.DECODING)
+            loaded = list(pool.map(safe_load, chunk))
+
+            arrays = [array for array, _ in loaded if array is not None]
+            probabilities, per_image_time = [], 0.0
+            if arrays:
+                on_stage(protocol.PREDICTING)
+                probabilities, per_image_time = predict_arrays(model, np.stack(arrays))
+
+            index = 0
+            for array, error in loaded:
+                if array is None:
+                    yield None, None, error
+                    continue
+                yield probabilities[index], per_image_time, None
+                index += 1
+
+def predict_arrays(model, batch):
+    start_time = time.time()
+    prediction = model.predict(batch, batch_size=len(batch), verbose=0)
+    per_image_time = (time.time() - start_time) * 1000 / len(batch)
+    return [float(p[0]) for p in prediction], per_image_time
+
+def print_batch(model, image_paths, batch_size):
+    # OK<TAB>result<TAB>confidence<TAB>probability<TAB>inference_ms, or ERR<TAB>message
+    for probability, per_image_time, error in predict_batch(model, image_paths, batch_size):
+        if error is not None:
+            print(f"ERR\t{error}")
+            continue
+        result, confidence = classify(probability)
+        print(f"OK\t{result}\t{confidence:.2f}\t{probability:.4f}\t{per_image_time:.2f}")
+
+def list_images(directory):
+    return sorted(os.path.join(directory, name) for name in os.listdir(directory)
+                  if name.lower().endswith(IMAGE_EXTENSIONS))
+
+def predict_parkinson(model_path, image_path):
+    try:
+        model = tf.keras.models.load_model(model_path, compile=False)
+        probability, inference_time = predict_image(model, image_path)
     except Exception as e:
         print(f"Error making prediction: {e}")
+        return
+    print_result(probability, inference_time)
+
+    metadata = ensure_model_metadata(model_path, model)
+    print(f"{int(metadata['size_bytes']) / (1024 * 1024):.2f}")
+    print(metadata['layers'])
+    print(metadata['parameters'])
+
+def handle_request(model, ring, channel, kind, body):
+    if kind == protocol.RUN:
+        start, count = protocol.decode_run(body)
+        channel.stage(protocol.PREDICTING)
+        ring.run(model, start, count)
+    elif kind == protocol.BATCH:
+        paths = protocol.decode_batch(body)
+        # The GUI already sends one batch per request, so predict it in one go
+        for probability, per_image_time, error in predict_batch(model, paths, max(1, len(paths)), channel.stage):
+            if error is not None:
+                channel.failed(error)
+            else:
+                channel.result(probability, per_image_time)
+    elif kind == protocol.PREDICT:
+        image_path, _ = protocol.decode_string(body, 0)
+        if not os.path.exists(image_path):
+            channel.failed(f"Image file '{image_path}' not found")
+            return
+        channel.result(*predict_image(model, image_path, channel.stage))
+    else:
+        raise ValueError(f"Unknown request type {kind}")
+
+def run_worker(model_path, ring_path=None):
+    """
+    Long-lived mode used by the GUI: the model is loaded once, then requests arrive as
+    frames on stdin (see worker_protocol.py). PREDICT and BATCH answer with one RESULT per
+    image, RUN predicts tensors the GUI already wrote into the shared ring and leaves the
+    results there. Every reply is preceded by STAGE events and ends with DONE.
+    """
+    # stdout belongs to the protocol from here on; stray prints and native writes go to stderr
+    channel = protocol.Channel(sys.stdin.buffer, os.fdopen(os.dup(1), 'wb'))
+    os.dup2(2, 1)
+    sys.stdout = sys.stderr
+
+    channel.stage(protocol.MODEL_LOADING)
+    ring = TensorRing(ring_path) if ring_path else None
+    model = load_model(model_path)
+    channel.hello()
+
+    while True:
+        frame = channel.read()
+        if frame is None or frame[0] == protocol.QUIT:
+            break
+        kind, body = frame
+
+        try:
+            handle_request(model, ring, channel, kind, body)
+        except Exception as e:
+            channel.error(f"Error handling request: {e}")
+        channel.done()
 
 if __name__ == "__main__":
+    if len(sys.argv) in (2, 4) and sys.argv[1] == "--worker":
+        run_worker(MODEL_PATH, sys.argv[3] if len(sys.argv) == 4 and sys.argv[2] == "--ring" else None)
+        sys.exit(0)
+
+    if len(sys.argv) in (3, 5) and sys.argv[1] == "--batch":
+        batch_size = int(sys.argv[4]) if len(sys.argv) == 5 and sys.argv[3] == "--batch-size" else DEFAULT_BATCH_SIZE
+        paths = list_images(sys.argv[2])
+        print_batch(tf.keras.models.load_model(MODEL_PATH, compile=False), paths, batch_size)
+        sys.exit(0)
+
     if len(sys.argv) != 2:
-        print("Usage: python predict.py <image_path>")
+        print("Usage: python predict.py <image_path> | --worker [--ring <file>] | --batch <dir> [--batch-size N]")
         sys.exit(1)
 
     image_path = sys.argv[1]
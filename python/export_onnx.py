@@ -0,0 +1,27 @@
+import os
+os.environ['TF_CPP_MIN_LOG_LEVEL'] = '3'
+
+import sys
+import tensorflow as tf
+import tf2onnx
+
+from detection import ensure_model_metadata
+
+MODEL_PATH = "models/best_model.h5"
+ONNX_PATH = "models/best_model.onnx"
+
+def export(model_path, onnx_path):
+    model = tf.keras.models.load_model(model_path, compile=False)
+    spec = (tf.TensorSpec((None, 224, 224, 3), tf.float32, name="input"),)
+    tf2onnx.convert.from_keras(model, input_signature=spec, output_path=onnx_path)
+
+    # Layer and parameter counts are not recoverable from the ONNX graph, so describe it from the Keras model
+    ensure_model_metadata(onnx_path, model)
+
+    print(f"Exported {model_path} -> {onnx_path}")
+
+if __name__ == "__main__":
+    # Usage: python export_onnx.py [model.h5] [model.onnx]
+    model_path = sys.argv[1] if len(sys.argv) > 1 else MODEL_PATH
+    onnx_path = sys.argv[2] if len(sys.argv) > 2 else ONNX_PATH
+    export(model_path, onnx_path)
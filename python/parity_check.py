@@ -0,0 +1,40 @@
+import os
+import sys
+import numpy as np
+
+from detection import INPUT_SIZE, load_and_preprocess_image
+
+# Compares the GUI's Java preprocessing with load_and_preprocess_image.
+# Run by "gradlew parityCheck" (part of "gradlew check") over python/samples, or by hand:
+#   java -p <module path> -m com.parkinsongui/com.parkinsongui.inference.ImagePreprocessor img.jpg img.f32
+#   python parity_check.py img.jpg img.f32 [tolerance]
+# Given two directories, every image in the first is compared with "<name>.f32" in the second.
+
+def compare(image_path, tensor_path, tolerance):
+    expected = load_and_preprocess_image(image_path).astype(np.float32)
+    actual = np.fromfile(tensor_path, dtype='<f4').reshape(1, INPUT_SIZE, INPUT_SIZE, 3)
+
+    diff = np.abs(expected - actual)
+    mismatched = int(np.count_nonzero(diff > tolerance))
+    print(f"{os.path.basename(image_path)}: max abs diff {diff.max():.8f}, "
+          f"mismatched values: {mismatched} of {diff.size}")
+    return mismatched == 0
+
+if __name__ == "__main__":
+    if len(sys.argv) not in (3, 4):
+        print("Usage: python parity_check.py <image> <java_tensor.f32> [tolerance]")
+        print("       python parity_check.py <image dir> <tensor dir> [tolerance]")
+        sys.exit(1)
+
+    tolerance = float(sys.argv[3]) if len(sys.argv) == 4 else 0.0
+    if os.path.isdir(sys.argv[1]):
+        names = sorted(name for name in os.listdir(sys.argv[1])
+                       if os.path.isfile(os.path.join(sys.argv[1], name)))
+        if not names:
+            print(f"No images in {sys.argv[1]}")
+            sys.exit(1)
+        results = [compare(os.path.join(sys.argv[1], name), os.path.join(sys.argv[2], name + '.f32'), tolerance)
+                   for name in names]
+        sys.exit(0 if all(results) else 1)
+
+    sys.exit(0 if compare(sys.argv[1], sys.argv[2], tolerance) else 1)
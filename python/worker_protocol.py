@@ -0,0 +1,112 @@
+"""
+Framing for detection.py --worker; keep in sync with WorkerProtocol.java.
+
+Every message, in both directions, is a big-endian u32 length followed by that many
+bytes: a u8 message type and its fields. Strings are a u16 byte count plus UTF-8.
+While a worker runs, its stdout carries nothing but frames; print() output and anything
+TensorFlow writes ends up on stderr, which the GUI drains separately.
+"""
+import struct
+
+PROTOCOL_VERSION = 2
+
+# Worker -> GUI
+HELLO = 1     # u16 protocol version, sent once the model is loaded
+STAGE = 2     # u8 stage code
+RESULT = 3    # u8 0, f32 probability, f32 inference ms  |  u8 1, string error
+ERROR = 4     # string; the request as a whole failed
+DONE = 5      # ends the reply to one request
+
+# GUI -> worker
+PREDICT = 16  # string image path
+BATCH = 17    # u16 count, then that many string paths
+RUN = 18      # u32 first ring slot, u32 slot count
+QUIT = 19
+
+# Stage codes, InferenceStage on the Java side
+MODEL_LOADING = 1
+DECODING = 2
+PREPROCESSING = 3
+PREDICTING = 4
+
+_LENGTH = struct.Struct('>I')
+_HEADER = struct.Struct('>IB')
+_U16 = struct.Struct('>H')
+_RUN = struct.Struct('>II')
+_RESULT_OK = struct.Struct('>Bff')
+
+
+def encode_string(value):
+    data = value.encode('utf-8')[:0xFFFF]
+    return _U16.pack(len(data)) + data
+
+
+def decode_string(body, offset):
+    (length,) = _U16.unpack_from(body, offset)
+    offset += _U16.size
+    return bytes(body[offset:offset + length]).decode('utf-8'), offset + length
+
+
+def decode_run(body):
+    return _RUN.unpack_from(body, 0)
+
+
+def decode_batch(body):
+    (count,) = _U16.unpack_from(body, 0)
+    offset = _U16.size
+    paths = []
+    for _ in range(count):
+        path, offset = decode_string(body, offset)
+        paths.append(path)
+    return paths
+
+
+class Channel:
+    def __init__(self, reader, writer):
+        self.reader = reader
+        self.writer = writer
+
+    def _read_exact(self, size):
+        data = self.reader.read(size)
+        while data and len(data) < size:
+            more = self.reader.read(size - len(data))
+            if not more:
+                break
+            data += more
+        return data if len(data) == size else None
+
+    def read(self):
+        """Returns (type, body) for the next frame, or None once the GUI closed the pipe."""
+        header = self._read_exact(_LENGTH.size)
+        if header is None:
+            return None
+        (length,) = _LENGTH.unpack(header)
+        frame = self._read_exact(length) if length else None
+        if frame is None:
+            return None
+        return frame[0], memoryview(frame)[1:]
+
+    def send(self, kind, payload=b'', flush=False):
+        self.writer.write(_HEADER.pack(len(payload) + 1, kind))
+        self.writer.write(payload)
+        if flush:
+            self.writer.flush()
+
+    def hello(self):
+        self.send(HELLO, _U16.pack(PROTOCOL_VERSION), flush=True)
+
+    def stage(self, code):
+        # Flushed right away so the GUI sees progress while the request is still running
+        self.send(STAGE, bytes((code,)), flush=True)
+
+    def result(self, probability, inference_time):
+        self.send(RESULT, _RESULT_OK.pack(0, probability, inference_time))
+
+    def failed(self, message):
+        self.send(RESULT, b'\x01' + encode_string(message))
+
+    def error(self, message):
+        self.send(ERROR, encode_string(message))
+
+    def done(self):
+        self.send(DONE, flush=True)
@@ -0,0 +1,96 @@
+package com.parkinsongui.inference;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing one worker reply (stage events, per-image results, DONE) as PythonWorker does.
+ * The reply bytes are replayed endlessly so only the parsing is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkerReplyParsingBenchmark {
+
+    @Param({"1", "32"})
+    public int images;
+
+    private WorkerProtocol protocol;
+    private List<String> imagePaths;
+
+    @Setup
+    public void createReply() throws IOException {
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(reply);
+        for (int stage : new int[]{InferenceStage.DECODING.code(), InferenceStage.PREPROCESSING.code(),
+                InferenceStage.PREDICTING.code()}) {
+            out.writeInt(2);
+            out.writeByte(WorkerProtocol.STAGE);
+            out.writeByte(stage);
+        }
+
+        imagePaths = new ArrayList<>();
+        for (int i = 0; i < images; i++) {
+            imagePaths.add("/home/user/Pictures/spiral_" + i + ".png");
+            if (i % 8 == 7) {
+                byte[] message = "cannot identify image file".getBytes(StandardCharsets.UTF_8);
+                out.writeInt(2 + 2 + message.length);
+                out.writeByte(WorkerProtocol.RESULT);
+                out.writeByte(1);
+                out.writeShort(message.length);
+                out.write(message);
+            } else {
+                out.writeInt(10);
+                out.writeByte(WorkerProtocol.RESULT);
+                out.writeByte(0);
+                out.writeFloat(0.8731f);
+                out.writeFloat(41.5f);
+            }
+        }
+        out.writeInt(1);
+        out.writeByte(WorkerProtocol.DONE);
+
+        protocol = new WorkerProtocol(new ReplayInputStream(reply.toByteArray()), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public List<BatchPrediction> parseReply() throws IOException {
+        return protocol.readReply(imagePaths, ProgressListener.NONE);
+    }
+
+    private static final class ReplayInputStream extends InputStream {
+        private final byte[] data;
+        private int position;
+
+        ReplayInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            int value = data[position] & 0xFF;
+            position = (position + 1) % data.length;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            int count = Math.min(length, data.length - position);
+            System.arraycopy(data, position, buffer, offset, count);
+            position = (position + count) % data.length;
+            return count;
+        }
+    }
+}
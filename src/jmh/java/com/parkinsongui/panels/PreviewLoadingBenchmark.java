@@ -0,0 +1,71 @@
+package com.parkinsongui.panels;
+
+import com.parkinsongui.inference.ImagePreprocessor;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the RunPanel preview of a full-size photo. The JavaFX loader needs the toolkit,
+ * so this benchmark needs a display (or Monocle: -Dglass.platform=Monocle -Dmonocle.platform=Headless).
+ * The ImageIO decode and box reduction is the same one the inference path uses, for comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class PreviewLoadingBenchmark {
+
+    @Param({"2048x1536", "4032x3024"})
+    public String resolution;
+
+    private File photo;
+
+    @Setup
+    public void createPhoto() throws Exception {
+        try {
+            Platform.startup(() -> {
+            });
+        } catch (IllegalStateException alreadyStarted) {
+            // Toolkit already running in this fork
+        }
+
+        String[] size = resolution.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+
+        photo = Files.createTempFile("preview-benchmark-", ".jpg").toFile();
+        ImageIO.write(image, "jpg", photo);
+    }
+
+    @TearDown
+    public void deletePhoto() {
+        photo.delete();
+    }
+
+    @Benchmark
+    public Image javafxPreview() {
+        return PreviewImages.load(photo);
+    }
+
+    @Benchmark
+    public BufferedImage imageIoReduced() throws Exception {
+        return ImagePreprocessor.readReduced(photo);
+    }
+}
@@ -0,0 +1,70 @@
+package com.parkinsongui.phone;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of streaming the photo out of an upload body the size of a phone picture and onto disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class MultipartExtractionBenchmark {
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+    @Param({"5", "20", "50"})
+    public int sizeMb;
+
+    private byte[] body;
+    private Path directory;
+    private MultipartStreamParser.UploadedFile saved;
+
+    @Setup
+    public void createBody() throws Exception {
+        byte[] image = new byte[sizeMb * 1024 * 1024];
+        new Random(42).nextBytes(image);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(image.length + 512);
+        out.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"image\"; filename=\"photo.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(image);
+        out.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        body = out.toByteArray();
+        directory = Files.createTempDirectory("multipart-benchmark-");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteSaved() throws Exception {
+        if (saved != null) {
+            Files.deleteIfExists(saved.path());
+            saved = null;
+        }
+    }
+
+    @TearDown
+    public void deleteDirectory() throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public MultipartStreamParser.UploadedFile saveFirstFile() throws Exception {
+        saved = new MultipartStreamParser(new ByteArrayInputStream(body), BOUNDARY, Long.MAX_VALUE)
+                .saveFirstFile(directory, "captured_");
+        return saved;
+    }
+}
@@ -0,0 +1,20 @@
+package com.parkinsongui.phone;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QrCodeBenchmark {
+
+    @Benchmark
+    public BufferedImage generateQrCode() throws Exception {
+        return QrCodes.generate("http://192.168.1.20:8080", 250);
+    }
+}
@@ -1,13 +1,31 @@
 package com.parkinsongui;
 
 import atlantafx.base.theme.CupertinoDark;
+import com.parkinsongui.history.CaptureStore;
+import com.parkinsongui.history.ResultsLog;
+import com.parkinsongui.inference.CachingInferenceEngine;
+import com.parkinsongui.inference.InferenceEngine;
+import com.parkinsongui.inference.ModelDescriptor;
+import com.parkinsongui.inference.PredictionResult;
+import com.parkinsongui.inference.SpeculativeInferenceEngine;
+import com.parkinsongui.metrics.LatencyLog;
+import com.parkinsongui.metrics.LatencyTrace;
 import com.parkinsongui.panels.*;
+import com.parkinsongui.phone.IngestQueue;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
-import javafx.scene.image.Image;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
 public class App extends Application {
     private Stage primaryStage;
     private BorderPane rootPane;
@@ -16,48 +34,143 @@ public class App extends Application {
     private ScanFromPhonePanel phonePanel;
     private RunPanel runPanel;
     private ResultPanel resultPanel;
+    private BatchAnalysisPanel batchAnalysisPanel;
+    private WebcamPanel webcamPanel;
+    private HistoryPanel historyPanel;
 
     //Tensorflow
 
     public static final String IMAGE_STORAGE_PATH = "captured_images/";
-    private Image capturedImage;
+    public static final String RESULT_CACHE_PATH = IMAGE_STORAGE_PATH + ".result-cache.idx";
+    public static final String LATENCY_LOG_PATH = IMAGE_STORAGE_PATH + ".latency.log";
+    public static final String INGEST_QUEUE_PATH = IMAGE_STORAGE_PATH + ".ingest";
+    public static final String CAPTURE_STORE_PATH = IMAGE_STORAGE_PATH + ".store";
+    public static final String RESULTS_LOG_PATH = IMAGE_STORAGE_PATH + ".results.log";
+    public static final String HISTORY_INDEX_PATH = IMAGE_STORAGE_PATH + ".history";
+    public static final String PHONE_TLS_PATH = IMAGE_STORAGE_PATH + ".phone-tls.p12";
+    public static final String WEBCAM_FRAME_PATH = IMAGE_STORAGE_PATH + ".webcam/frame.jpg";
+
+    private InferenceEngine inferenceEngine;
+    private InferenceEngine frameInferenceEngine;
+    private SpeculativeInferenceEngine speculativeEngine;
+    // Analyse phone uploads as soon as they arrive (--auto-analyze=true or -Dparkinson.autoAnalyze=true)
+    private boolean autoAnalyze;
+    private LatencyLog latencyLog;
+    // Opened off the FX thread, as recovery and the store's scan read the disk; the getters wait
+    private volatile IngestQueue ingestQueue;
+    private volatile CaptureStore captureStore;
+    private CompletableFuture<Void> storageReady;
+    private ResultsLog resultsLog;
+    // From process start to the first frame on screen; null once it has been reported
+    private static LatencyTrace startupTrace;
 
     @Override
     public void start(Stage stage) {
+        if (startupTrace == null) {
+            // Launched without going through main
+            startupTrace = new LatencyTrace();
+        }
+        startupTrace.mark("JavaFX launch");
         Application.setUserAgentStylesheet(new CupertinoDark().getUserAgentStylesheet());
 
         this.primaryStage = stage;
         this.rootPane = new BorderPane();
+        this.frameInferenceEngine = InferenceEngine.create(getParameters().getNamed().get("engine"));
+        this.speculativeEngine = new SpeculativeInferenceEngine(new CachingInferenceEngine(
+                frameInferenceEngine, Paths.get(RESULT_CACHE_PATH)));
+        this.inferenceEngine = speculativeEngine;
+        this.autoAnalyze = Boolean.parseBoolean(getParameters().getNamed().getOrDefault("auto-analyze",
+                System.getProperty(SpeculativeInferenceEngine.ENABLED_PROPERTY, "false")));
+        System.out.println("Inference engine: " + inferenceEngine.getName() + (autoAnalyze ? ", auto-analysis on" : ""));
+        this.latencyLog = new LatencyLog(Paths.get(LATENCY_LOG_PATH));
+        // Read on its own thread; the first query waits for it
+        this.resultsLog = new ResultsLog(Paths.get(RESULTS_LOG_PATH));
+        // The home screen needs neither; a panel that does waits for them
+        this.storageReady = CompletableFuture.runAsync(this::openStorage);
+        storageReady.exceptionally(error -> {
+            System.err.println("Could not open capture storage: " + error.getMessage());
+            error.printStackTrace();
+            return null;
+        });
+        startupTrace.mark("Engine setup");
 
-        initializePanels();
+        // Every other panel is built the first time it is shown
         showHomePanel();
+        startupTrace.mark("Home panel");
 
         Scene scene = new Scene(rootPane, 840, 720);
         stage.setTitle("Parkinson Disease Detection");
         stage.setScene(scene);
         stage.setOnCloseRequest(e -> cleanup());
+        afterNextLayout(() -> {
+            startupTrace.mark("First frame");
+            System.out.println("Startup: " + format(startupTrace));
+            startupTrace = null;
+        });
         stage.show();
     }
 
-    private void initializePanels() {
-        homePanel = new HomePanel(this);
-        scanImagePanel = new ScanImagePanel(this);
-        phonePanel = new ScanFromPhonePanel(this);
-        runPanel = new RunPanel(this);
-        resultPanel = new ResultPanel(this);
+    private void openStorage() {
+        try {
+            this.ingestQueue = new IngestQueue(Paths.get(INGEST_QUEUE_PATH));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the ingest queue", e);
+        }
+        try {
+            this.captureStore = new CaptureStore(Paths.get(IMAGE_STORAGE_PATH), Paths.get(CAPTURE_STORE_PATH));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the capture store", e);
+        }
+        // Queued uploads must still be there when their turn comes
+        captureStore.startMaintenance(ingestQueue::images);
+        // Uploads still waiting from the last run are picked up like fresh ones
+        ingestQueue.pending().forEach(entry -> uploadReceived(entry.image()));
     }
 
     public void showHomePanel() {
+        if (homePanel == null) {
+            homePanel = new HomePanel(this);
+        }
         rootPane.setCenter(homePanel);
     }
 
     public void showScanImagePanel() {
+        if (scanImagePanel == null) {
+            scanImagePanel = new ScanImagePanel(this);
+        }
         rootPane.setCenter(scanImagePanel);
-       // scanImagePanel.startCamera();
+    }
+
+    public void showWebcamPanel() {
+        if (webcamPanel == null) {
+            webcamPanel = new WebcamPanel(this);
+        }
+        rootPane.setCenter(webcamPanel);
+        webcamPanel.startCamera();
     }
 
     public void showScanFromPhonePanel() {
+        if (phonePanel == null) {
+            phonePanel = new ScanFromPhonePanel(this);
+        }
         rootPane.setCenter(phonePanel);
+        // A no-op while it runs; brings it back after "Stop Server"
+        phonePanel.startServer();
+    }
+
+    public void showBatchAnalysisPanel() {
+        if (batchAnalysisPanel == null) {
+            batchAnalysisPanel = new BatchAnalysisPanel(this);
+        }
+        rootPane.setCenter(batchAnalysisPanel);
+    }
+
+    public void showHistoryPanel() {
+        if (historyPanel == null) {
+            historyPanel = new HistoryPanel(this);
+        }
+        rootPane.setCenter(historyPanel);
+        historyPanel.refresh();
     }
 
     public void showRunPanel(String imagePath) {
@@ -71,28 +184,157 @@ public class App extends Application {
 
     // In your App.java, update the showResultPanel method:
     public void showResultPanel(String result, float confidenceScore, double probabilityScore,
-            float inferenceTime, float modelSize, int modelLayers, int totalParameters) {
+            float inferenceTime, ModelDescriptor model, LatencyTrace trace) {
+        if (resultPanel == null) {
+            resultPanel = new ResultPanel(this);
+        }
         rootPane.setCenter(resultPanel);
-        resultPanel.displayResults(result, confidenceScore, probabilityScore, inferenceTime, modelSize, modelLayers, totalParameters);
+        resultPanel.displayResults(result, confidenceScore, probabilityScore, inferenceTime, model);
+        if (trace != null) {
+            recordAfterLayout(trace);
+        }
     }
 
-    public Image getCapturedImage() {
-        return capturedImage;
+    // The trace ends at the first layout pulse that includes the result panel
+    private void recordAfterLayout(LatencyTrace trace) {
+        afterNextLayout(() -> {
+            trace.mark("Scene switch & render");
+            resultPanel.displayLatency(trace, latencyLog.record(inferenceEngine.getName(), trace));
+        });
+    }
+
+    // Runs once, right after the next layout pulse of the stage's scene
+    private void afterNextLayout(Runnable action) {
+        Scene scene = primaryStage.getScene();
+        scene.addPostLayoutPulseListener(new Runnable() {
+            private boolean ran;
+
+            @Override
+            public void run() {
+                if (ran) {
+                    return;
+                }
+                ran = true;
+                // Not removed in place: the scene may be iterating over its listeners right now
+                Platform.runLater(() -> scene.removePostLayoutPulseListener(this));
+                action.run();
+            }
+        });
+    }
+
+    private static String format(LatencyTrace trace) {
+        StringBuilder text = new StringBuilder(String.format("%.0f ms (", trace.totalNanos() / 1_000_000.0));
+        for (LatencyTrace.Phase phase : trace.phases()) {
+            if (text.charAt(text.length() - 1) != '(') {
+                text.append(", ");
+            }
+            text.append(String.format("%s %.0f ms", phase.name().toLowerCase(), phase.millis()));
+        }
+        return text.append(')').toString();
     }
 
-    public void setCapturedImage(Image image) {
-        this.capturedImage = image;
+    /**
+     * Called by the run and batch panels once an image has been analysed: the result is
+     * logged, and uploads that came in through the phone queue are counted as done.
+     */
+    public void analysisFinished(String imagePath, PredictionResult prediction) {
+        resultsLog.append(Paths.get(imagePath), prediction).exceptionally(error -> {
+            System.err.println("Could not log result for " + imagePath + ": " + error.getMessage());
+            return null;
+        });
+        storageReady.thenRun(() -> ingestQueue.complete(Paths.get(imagePath)));
+        // Hashes captures saved before the store existed, so off the FX thread
+        storageReady.thenRunAsync(() -> captureStore.retain(Paths.get(imagePath)));
+    }
+
+    /**
+     * Called by the run panel when an analysis failed or the panel was left without one, so
+     * a phone upload taken for it goes back to waiting.
+     */
+    public void analysisAbandoned(String imagePath) {
+        storageReady.thenRun(() -> ingestQueue.release(Paths.get(imagePath)));
+    }
+
+    /**
+     * Called for every phone upload once it is safely queued.
+     */
+    public void uploadReceived(Path image) {
+        if (autoAnalyze) {
+            speculativeEngine.speculate(image.toString());
+        }
+    }
+
+    /**
+     * Counts of ahead-of-time analyses, or null when auto-analysis is off.
+     */
+    public SpeculativeInferenceEngine.Stats getSpeculationStats() {
+        return autoAnalyze ? speculativeEngine.stats() : null;
+    }
+
+    public ResultsLog getResultsLog() {
+        return resultsLog;
+    }
+
+    public CaptureStore getCaptureStore() {
+        storageReady.join();
+        return captureStore;
+    }
+
+    public IngestQueue getIngestQueue() {
+        storageReady.join();
+        return ingestQueue;
     }
 
     public Stage getPrimaryStage() {
         return primaryStage;
     }
 
+    public InferenceEngine getInferenceEngine() {
+        return inferenceEngine;
+    }
+
+    /**
+     * The engine without the result cache, for webcam frames that are never seen twice and
+     * would only fill the cache.
+     */
+    public InferenceEngine getFrameInferenceEngine() {
+        return frameInferenceEngine;
+    }
+
     private void cleanup() {
+        if (phonePanel != null) {
+            phonePanel.stopServer();
+        }
+        if (webcamPanel != null) {
+            webcamPanel.stopCamera();
+        }
+        if (historyPanel != null) {
+            historyPanel.close();
+        }
+        if (inferenceEngine != null) {
+            inferenceEngine.shutdown();
+        }
+        if (latencyLog != null) {
+            latencyLog.close();
+        }
+        if (resultsLog != null) {
+            resultsLog.close();
+        }
+        if (captureStore != null) {
+            captureStore.close();
+            System.out.println("Capture store: " + captureStore.stats());
+        }
+        System.out.println("Preview cache: " + PreviewImages.cacheStats());
         System.exit(0);
     }
 
     public static void main(String[] args) {
+        // The process was already running before main; count that time too where the OS tells us
+        long sinceProcessStart = ProcessHandle.current().info().startInstant()
+                .map(started -> Duration.between(started, Instant.now()).toNanos())
+                .orElse(0L);
+        startupTrace = new LatencyTrace(System.nanoTime() - sinceProcessStart);
+        startupTrace.mark("JVM start");
         launch(args);
     }
 }
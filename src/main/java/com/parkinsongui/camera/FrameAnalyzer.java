@@ -0,0 +1,108 @@
+package com.parkinsongui.camera;
+
+import com.parkinsongui.inference.InferenceEngine;
+import com.parkinsongui.inference.PredictionResult;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Analyses camera frames continuously, but never more than one at a time: a frame offered
+ * while an analysis is running is simply skipped. The camera can run at 30 FPS while the
+ * model takes as long as it takes, without a queue of stale frames building up.
+ *
+ * The frame is copied into one reused image and written to one reused file, since the
+ * engines take images from disk.
+ */
+public class FrameAnalyzer {
+    private final InferenceEngine engine;
+    private final Path frameFile;
+    private final Consumer<PredictionResult> listener;
+    private final AtomicBoolean busy = new AtomicBoolean();
+    private final ExecutorService encoder = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "webcam-analysis");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private BufferedImage image;
+    private volatile boolean stopped;
+    private long analysed;
+    private long skipped;
+
+    /**
+     * The listener is called on an engine thread with each result.
+     */
+    public FrameAnalyzer(InferenceEngine engine, Path frameFile, Consumer<PredictionResult> listener) {
+        this.engine = engine;
+        this.frameFile = frameFile;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts analysing the frame unless an analysis is still running. Returns at once; the
+     * frame is copied before this returns, so it can go back to its pool.
+     */
+    public boolean offer(FramePool.Frame frame) {
+        if (stopped || !busy.compareAndSet(false, true)) {
+            countSkipped();
+            return false;
+        }
+        // Only touched again once the analysis below has finished with it
+        if (image == null || image.getWidth() != frame.getWidth() || image.getHeight() != frame.getHeight()) {
+            image = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        }
+        frame.copyTo(image);
+        encoder.execute(this::analyse);
+        return true;
+    }
+
+    private void analyse() {
+        try {
+            Files.createDirectories(frameFile.getParent());
+            if (!ImageIO.write(image, "jpg", frameFile.toFile())) {
+                throw new IOException("No JPEG writer available");
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write webcam frame: " + e.getMessage());
+            busy.set(false);
+            return;
+        }
+        engine.predict(frameFile.toString()).whenComplete((result, error) -> {
+            countAnalysed();
+            busy.set(false);
+            if (error != null) {
+                System.err.println("Webcam frame analysis failed: " + error.getMessage());
+            } else if (!stopped) {
+                listener.accept(result);
+            }
+        });
+    }
+
+    private synchronized void countAnalysed() {
+        analysed++;
+    }
+
+    private synchronized void countSkipped() {
+        skipped++;
+    }
+
+    public synchronized long getAnalysed() {
+        return analysed;
+    }
+
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    public void stop() {
+        stopped = true;
+        encoder.shutdown();
+    }
+}
@@ -0,0 +1,125 @@
+package com.parkinsongui.camera;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed set of frame buffers for one resolution, allocated once when the camera opens.
+ * Frames cycle between the capture thread, the preview and the pool; nothing is allocated
+ * per frame, so the garbage collector has nothing to do while the camera runs.
+ */
+public class FramePool {
+    private final int width;
+    private final int height;
+    private final BlockingQueue<Frame> free;
+
+    public FramePool(int width, int height, int size) {
+        this.width = width;
+        this.height = height;
+        this.free = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            // Direct, so native drivers can fill them without an extra copy
+            free.add(new Frame(width, height, ByteBuffer.allocateDirect(width * height * 3)));
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Takes a free frame, waiting up to the timeout; null if every frame is still in use.
+     */
+    public Frame acquire(long timeoutMillis) throws InterruptedException {
+        return free.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void release(Frame frame) {
+        if (frame != null) {
+            free.offer(frame);
+        }
+    }
+
+    /**
+     * One captured image as packed RGB bytes, row by row without padding.
+     */
+    public static final class Frame {
+        private final int width;
+        private final int height;
+        private final ByteBuffer rgb;
+        private long sequence;
+        private long capturedNanos;
+
+        private Frame(int width, int height, ByteBuffer rgb) {
+            this.width = width;
+            this.height = height;
+            this.rgb = rgb;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * The pixels, positioned at the start.
+         */
+        public ByteBuffer rgb() {
+            return rgb.rewind();
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getCapturedNanos() {
+            return capturedNanos;
+        }
+
+        void stamp(long sequence) {
+            this.sequence = sequence;
+            this.capturedNanos = System.nanoTime();
+        }
+
+        /**
+         * Copies the pixels into an image of type TYPE_3BYTE_BGR with the same size.
+         */
+        public void copyTo(BufferedImage image) {
+            byte[] bgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            ByteBuffer source = rgb();
+            for (int i = 0; i < bgr.length; i += 3) {
+                byte r = source.get();
+                byte g = source.get();
+                bgr[i] = source.get();
+                bgr[i + 1] = g;
+                bgr[i + 2] = r;
+            }
+        }
+
+        /**
+         * Fills the frame from an image the driver allocated itself, using a caller-owned
+         * scratch row so the conversion does not allocate either.
+         */
+        void copyFrom(BufferedImage image, int[] scratchRow) {
+            ByteBuffer target = rgb();
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, scratchRow, 0, width);
+                for (int x = 0; x < width; x++) {
+                    int pixel = scratchRow[x];
+                    target.put((byte) (pixel >> 16)).put((byte) (pixel >> 8)).put((byte) pixel);
+                }
+            }
+        }
+    }
+}
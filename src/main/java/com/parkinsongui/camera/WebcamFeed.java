@@ -0,0 +1,275 @@
+package com.parkinsongui.camera;
+
+import com.github.sarxos.webcam.Webcam;
+import com.github.sarxos.webcam.WebcamDevice;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Grabs frames from a webcam on its own thread into a {@link FramePool}.
+ *
+ * Only the newest frame is handed on: when the consumer has not taken the previous one yet,
+ * that frame goes straight back to the pool and counts as dropped. The listener is told
+ * about a new frame only when the consumer had caught up, so a slow preview gets one
+ * notification, not a backlog.
+ */
+public class WebcamFeed {
+    public static final String DEVICE_PROPERTY = "parkinson.webcam";
+    public static final String FPS_PROPERTY = "parkinson.webcam.fps";
+
+    // One being filled, one waiting for the consumer, one being drawn
+    private static final int POOL_SIZE = 3;
+    private static final double FPS_SMOOTHING = 0.1;
+
+    /**
+     * Called on the capture thread. Frames passed to onFrame are only lent: they must not be
+     * kept after the call returns.
+     */
+    public interface Listener {
+        void frameAvailable();
+
+        default void onFrame(FramePool.Frame frame) {
+        }
+    }
+
+    private final Webcam webcam;
+    private final FramePool pool;
+    private final AtomicReference<FramePool.Frame> latest = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<BufferedImage>> snapshot = new AtomicReference<>();
+    private final long frameIntervalNanos;
+    private volatile boolean running;
+    private Thread thread;
+    private long captured;
+    private long dropped;
+    private double fps;
+
+    private WebcamFeed(Webcam webcam) {
+        this.webcam = webcam;
+        Dimension size = webcam.getViewSize();
+        this.pool = new FramePool(size.width, size.height, POOL_SIZE);
+        this.frameIntervalNanos = 1_000_000_000L / Math.max(1, Integer.getInteger(FPS_PROPERTY, 30));
+    }
+
+    /**
+     * Finds the camera (by name with -Dparkinson.webcam=..., otherwise the default one), opens
+     * it at its largest resolution and returns a feed that is not capturing yet. Slow; keep it
+     * off the FX thread.
+     */
+    public static WebcamFeed open() {
+        Webcam webcam = find(System.getProperty(DEVICE_PROPERTY));
+        if (webcam == null) {
+            throw new IllegalStateException("No webcam found");
+        }
+        Dimension[] sizes = webcam.getViewSizes();
+        if (sizes != null && sizes.length > 0) {
+            webcam.setViewSize(Arrays.stream(sizes)
+                    .max(Comparator.comparingInt(size -> size.width * size.height)).get());
+        }
+        if (!webcam.open()) {
+            throw new IllegalStateException("Could not open " + webcam.getName());
+        }
+        Dimension size = webcam.getViewSize();
+        System.out.println("Webcam: " + webcam.getName() + " at " + size.width + "x" + size.height);
+        return new WebcamFeed(webcam);
+    }
+
+    private static Webcam find(String name) {
+        if (name == null || name.isBlank()) {
+            return Webcam.getDefault();
+        }
+        List<Webcam> webcams = Webcam.getWebcams();
+        for (Webcam candidate : webcams) {
+            if (candidate.getName().toLowerCase(Locale.ROOT).contains(name.trim().toLowerCase(Locale.ROOT))) {
+                return candidate;
+            }
+        }
+        System.err.println("No webcam matching '" + name + "', using the default one");
+        return Webcam.getDefault();
+    }
+
+    public String getName() {
+        return webcam.getName();
+    }
+
+    public int getWidth() {
+        return pool.getWidth();
+    }
+
+    public int getHeight() {
+        return pool.getHeight();
+    }
+
+    public synchronized void start(Listener listener) {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(() -> capture(listener), "webcam-capture");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void capture(Listener listener) {
+        try {
+            captureFrames(listener);
+        } finally {
+            // However the loop ended, a failed capture included, the feed no longer runs, so
+            // snapshot() fails fast and start() can bring it back; a newer start() is left alone
+            synchronized (this) {
+                if (thread == Thread.currentThread()) {
+                    running = false;
+                    thread = null;
+                }
+            }
+            CompletableFuture<BufferedImage> requested = snapshot.getAndSet(null);
+            if (requested != null) {
+                requested.completeExceptionally(new IllegalStateException("Webcam stopped"));
+            }
+        }
+    }
+
+    private void captureFrames(Listener listener) {
+        // Drivers without direct buffer access hand out a new image per frame; converting
+        // it through one reused row keeps the rest of the path allocation free
+        boolean bufferAccess = webcam.getDevice() instanceof WebcamDevice.BufferAccess;
+        int[] scratchRow = bufferAccess ? null : new int[pool.getWidth()];
+        long sequence = 0;
+        long lastNanos = 0;
+        while (running) {
+            long started = System.nanoTime();
+            FramePool.Frame frame;
+            try {
+                frame = pool.acquire(100);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (frame == null) {
+                continue;
+            }
+            try {
+                if (bufferAccess) {
+                    webcam.getImageBytes(frame.rgb());
+                } else {
+                    BufferedImage image = webcam.getImage();
+                    if (image == null) {
+                        pool.release(frame);
+                        continue;
+                    }
+                    frame.copyFrom(image, scratchRow);
+                }
+            } catch (RuntimeException e) {
+                pool.release(frame);
+                if (running) {
+                    System.err.println("Webcam capture failed: " + e.getMessage());
+                }
+                break;
+            }
+            frame.stamp(++sequence);
+            countFrame(lastNanos, frame.getCapturedNanos());
+            lastNanos = frame.getCapturedNanos();
+
+            CompletableFuture<BufferedImage> requested = snapshot.getAndSet(null);
+            if (requested != null) {
+                BufferedImage copy = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+                frame.copyTo(copy);
+                requested.complete(copy);
+            }
+            listener.onFrame(frame);
+
+            FramePool.Frame previous = latest.getAndSet(frame);
+            if (previous != null) {
+                pool.release(previous);
+                countDropped();
+            } else {
+                listener.frameAvailable();
+            }
+            pace(started);
+        }
+    }
+
+    private void pace(long startedNanos) {
+        long remaining = frameIntervalNanos - (System.nanoTime() - startedNanos);
+        if (remaining > 0) {
+            try {
+                Thread.sleep(remaining / 1_000_000, (int) (remaining % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Takes the newest frame, or null if there is none since the last call. The frame must be
+     * given back with {@link #release} once drawn.
+     */
+    public FramePool.Frame takeLatest() {
+        return latest.getAndSet(null);
+    }
+
+    public void release(FramePool.Frame frame) {
+        pool.release(frame);
+    }
+
+    /**
+     * A full-resolution copy of the next frame, for keeping.
+     */
+    public CompletableFuture<BufferedImage> snapshot() {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Webcam is not running"));
+        }
+        CompletableFuture<BufferedImage> future = new CompletableFuture<>();
+        CompletableFuture<BufferedImage> pending = snapshot.compareAndExchange(null, future);
+        return pending != null ? pending : future;
+    }
+
+    private synchronized void countFrame(long lastNanos, long nowNanos) {
+        captured++;
+        if (lastNanos > 0) {
+            double interval = (nowNanos - lastNanos) / 1e9;
+            if (interval > 0) {
+                fps = fps == 0 ? 1 / interval : fps + FPS_SMOOTHING * (1 / interval - fps);
+            }
+        }
+    }
+
+    public synchronized void countDropped() {
+        dropped++;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(captured, dropped, fps);
+    }
+
+    public void stop() {
+        Thread capturing;
+        synchronized (this) {
+            running = false;
+            capturing = thread;
+            thread = null;
+        }
+        if (capturing != null) {
+            try {
+                capturing.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pool.release(latest.getAndSet(null));
+        webcam.close();
+    }
+
+    public record Stats(long captured, long dropped, double fps) {
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.1f fps, %d captured, %d dropped", fps, captured, dropped);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.parkinsongui.history;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Every capture in the image folder, with a small JPEG thumbnail generated once and kept on
+ * disk. Thumbnails are appended to "thumbs.dat"; "index.tsv" has one line per thumbnail:
+ * file name, size, modification time, offset and length in thumbs.dat. A later line for the
+ * same name replaces an earlier one.
+ *
+ * {@link #refresh} only looks at what changed: the folder is not listed again while its
+ * modification time stays the same, and a thumbnail is only made for a file that is new or
+ * whose size or modification time changed, the first time it is asked for.
+ */
+public class CaptureIndex {
+    public static final int THUMB_WIDTH = 120;
+    public static final int THUMB_HEIGHT = 90;
+
+    private static final String INDEX_FILE = "index.tsv";
+    private static final String THUMBS_FILE = "thumbs.dat";
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final List<String> IMAGE_EXTENSIONS = List.of(".png", ".jpg", ".jpeg", ".bmp", ".gif");
+    // Superseded or orphaned thumbnails are only rewritten away once there are this many
+    private static final int COMPACT_MIN_STALE = 200;
+
+    private final Path captureDirectory;
+    private final Path indexFile;
+    private final Path thumbsFile;
+    private final Map<String, Thumb> thumbs = new HashMap<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private FileChannel thumbData;
+    private int indexLines;
+    private FileTime listedAt;
+    private List<Entry> sorted = List.of();
+
+    public CaptureIndex(Path captureDirectory, Path indexDirectory) throws IOException {
+        this.captureDirectory = captureDirectory;
+        this.indexFile = indexDirectory.resolve(INDEX_FILE);
+        this.thumbsFile = indexDirectory.resolve(THUMBS_FILE);
+        Files.createDirectories(indexDirectory);
+        open();
+    }
+
+    private void open() throws IOException {
+        thumbData = FileChannel.open(thumbsFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long dataLength = thumbData.size();
+        if (Files.exists(indexFile)) {
+            byte[] index = Files.readAllBytes(indexFile);
+            int end = index.length;
+            while (end > 0 && index[end - 1] != '\n') {
+                end--;
+            }
+            if (end != index.length) {
+                // Half-written last line from a crash; drop it so the next append starts cleanly
+                try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+                    channel.truncate(end);
+                }
+            }
+            for (String line : new String(index, 0, end, StandardCharsets.UTF_8).split("\n")) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                indexLines++;
+                String[] fields = line.split(FIELD_SEPARATOR);
+                if (fields.length != 5) {
+                    continue;
+                }
+                try {
+                    Thumb thumb = new Thumb(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                            Long.parseLong(fields[3]), Integer.parseInt(fields[4]));
+                    // Index lines are written after their data, but a crash can still lose the data
+                    if (thumb.offset() + thumb.length() <= dataLength) {
+                        thumbs.put(fields[0], thumb);
+                    }
+                } catch (NumberFormatException e) {
+                    // Unreadable line; that thumbnail is simply made again
+                }
+            }
+        }
+        System.out.println("Capture history: " + thumbs.size() + " thumbnails indexed");
+    }
+
+    /**
+     * All captures, newest first. Cheap when nothing was added or removed since the last call.
+     */
+    public synchronized List<Entry> refresh() throws IOException {
+        if (!Files.isDirectory(captureDirectory)) {
+            return List.of();
+        }
+        FileTime modified = Files.getLastModifiedTime(captureDirectory);
+        if (modified.equals(listedAt)) {
+            return sorted;
+        }
+        listedAt = modified;
+
+        Map<String, Entry> found = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(captureDirectory, CaptureIndex::isCapture)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                Entry entry = entries.get(name);
+                long size = attributes.size();
+                long modifiedMillis = attributes.lastModifiedTime().toMillis();
+                if (entry == null || entry.size() != size || entry.modified() != modifiedMillis) {
+                    entry = new Entry(file, size, modifiedMillis);
+                }
+                found.put(name, entry);
+            }
+        }
+        entries.clear();
+        entries.putAll(found);
+        sorted = found.values().stream()
+                .sorted(Comparator.comparingLong(Entry::modified).reversed())
+                .toList();
+        compactIfWorthIt();
+        return sorted;
+    }
+
+    static boolean isCapture(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return !name.startsWith(".") && IMAGE_EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    /**
+     * The stored thumbnail as JPEG bytes, made and stored first if the capture has none yet or
+     * has changed since. Safe to call from several threads.
+     */
+    public byte[] thumbnail(Entry entry) throws IOException {
+        String name = entry.image().getFileName().toString();
+        synchronized (this) {
+            Thumb thumb = thumbs.get(name);
+            if (thumb != null && thumb.matches(entry)) {
+                ByteBuffer bytes = ByteBuffer.allocate(thumb.length());
+                while (bytes.hasRemaining()) {
+                    if (thumbData.read(bytes, thumb.offset() + bytes.position()) < 0) {
+                        throw new IOException("Thumbnail data truncated for " + name);
+                    }
+                }
+                return bytes.array();
+            }
+        }
+
+        byte[] jpeg = render(entry.image());
+        synchronized (this) {
+            Thumb current = thumbs.get(name);
+            if (current == null || !current.matches(entry)) {
+                long offset = thumbData.size();
+                ByteBuffer bytes = ByteBuffer.wrap(jpeg);
+                while (bytes.hasRemaining()) {
+                    thumbData.write(bytes, offset + bytes.position());
+                }
+                String line = String.join(FIELD_SEPARATOR, name, Long.toString(entry.size()),
+                        Long.toString(entry.modified()), Long.toString(offset), Integer.toString(jpeg.length)) + "\n";
+                Files.writeString(indexFile, line, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                indexLines++;
+                thumbs.put(name, new Thumb(entry.size(), entry.modified(), offset, jpeg.length));
+            }
+        }
+        return jpeg;
+    }
+
+    // Decoded subsampled to about twice the thumbnail size, then scaled down smoothly
+    static byte[] render(Path image) throws IOException {
+        BufferedImage source;
+        try (ImageInputStream input = ImageIO.createImageInputStream(image.toFile())) {
+            if (input == null) {
+                throw new IOException("Cannot open image: " + image);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image: " + image);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int step = Math.max(1, Math.min(reader.getWidth(0) / (THUMB_WIDTH * 2), reader.getHeight(0) / (THUMB_HEIGHT * 2)));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                source = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        double scale = Math.min(1.0, Math.min((double) THUMB_WIDTH / source.getWidth(), (double) THUMB_HEIGHT / source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage thumb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumb.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(source, 0, 0, width, height, null);
+        graphics.dispose();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 * 1024);
+        if (!ImageIO.write(thumb, "jpg", out)) {
+            throw new IOException("No JPEG writer available");
+        }
+        return out.toByteArray();
+    }
+
+    // Rewrites both files with only the thumbnails of captures that still exist unchanged
+    private void compactIfWorthIt() throws IOException {
+        List<Map.Entry<String, Thumb>> live = new ArrayList<>();
+        for (Map.Entry<String, Thumb> thumb : thumbs.entrySet()) {
+            Entry entry = entries.get(thumb.getKey());
+            if (entry != null && thumb.getValue().matches(entry)) {
+                live.add(thumb);
+            }
+        }
+        int stale = indexLines - live.size();
+        if (stale < COMPACT_MIN_STALE || stale < live.size()) {
+            return;
+        }
+
+        Path dataTemp = thumbsFile.resolveSibling(THUMBS_FILE + ".tmp");
+        Path indexTemp = indexFile.resolveSibling(INDEX_FILE + ".tmp");
+        Map<String, Thumb> moved = new HashMap<>();
+        StringBuilder lines = new StringBuilder();
+        try (FileChannel out = FileChannel.open(dataTemp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long offset = 0;
+            for (Map.Entry<String, Thumb> thumb : live) {
+                Thumb old = thumb.getValue();
+                thumbData.transferTo(old.offset(), old.length(), out);
+                Thumb copied = new Thumb(old.size(), old.modified(), offset, old.length());
+                moved.put(thumb.getKey(), copied);
+                lines.append(String.join(FIELD_SEPARATOR, thumb.getKey(), Long.toString(copied.size()),
+                        Long.toString(copied.modified()), Long.toString(copied.offset()),
+                        Integer.toString(copied.length()))).append('\n');
+                offset += old.length();
+            }
+        }
+        Files.writeString(indexTemp, lines, StandardCharsets.UTF_8);
+
+        thumbData.close();
+        // Without an index every thumbnail is simply made again, so a crash between the two
+        // moves can never pair offsets with the wrong data file
+        Files.delete(indexFile);
+        Files.move(dataTemp, thumbsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indexTemp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        thumbData = FileChannel.open(thumbsFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        thumbs.clear();
+        thumbs.putAll(moved);
+        System.out.println("Capture history: compacted away " + stale + " stale thumbnails");
+        indexLines = live.size();
+    }
+
+    public synchronized void close() {
+        try {
+            thumbData.close();
+        } catch (IOException e) {
+            System.err.println("Error closing capture history: " + e.getMessage());
+        }
+    }
+
+    public record Entry(Path image, long size, long modified) {
+    }
+
+    private record Thumb(long size, long modified, long offset, int length) {
+
+        boolean matches(Entry entry) {
+            return size == entry.size() && modified == entry.modified();
+        }
+    }
+}
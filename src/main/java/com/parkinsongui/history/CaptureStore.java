@@ -0,0 +1,409 @@
+package com.parkinsongui.history;
+
+import com.parkinsongui.inference.ModelFingerprint;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * The capture folder, with every capture named by the SHA-256 of its bytes: the same drawing
+ * sent twice is kept once, and the name is also the key the result cache uses for it.
+ *
+ * Each capture counts the analyses recorded for it; "refs.tsv" in the state directory has one
+ * line per change, hash and count, and a later line for a hash replaces an earlier one.
+ *
+ * A background pass renames captures saved under the old "captured_&lt;time&gt;.jpg" (or .png)
+ * names and nothing else, then removes captures older than -Dparkinson.captures.maxAgeDays
+ * (default 180) and, while the folder is over -Dparkinson.captures.maxMb (default 2048), the
+ * oldest ones, never analysed captures before analysed ones. 0 turns either limit off.
+ * Removing an analysed capture loses only the image: the results log keeps its hash and
+ * result. Captures in use or {@link #pin pinned} by a panel, or written or sent again within
+ * the last hour, are never renamed or removed.
+ */
+public class CaptureStore {
+    public static final String MAX_AGE_PROPERTY = "parkinson.captures.maxAgeDays";
+    public static final String MAX_SIZE_PROPERTY = "parkinson.captures.maxMb";
+
+    private static final String REFS_FILE = "refs.tsv";
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final Pattern HASH_NAME = Pattern.compile("[0-9a-f]{64}\\.[a-z0-9]+");
+    private static final Pattern LEGACY_NAME = Pattern.compile("captured_\\d+\\.(png|jpe?g)");
+    private static final long GRACE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long MAINTENANCE_DELAY_SECONDS = 30;
+    private static final long MAINTENANCE_PERIOD_HOURS = 6;
+
+    private final Path directory;
+    private final Path refsFile;
+    private final long maxAgeMillis;
+    private final long maxBytes;
+    private final Map<String, Capture> captures = new HashMap<>();
+    private final Map<String, Integer> refs = new HashMap<>();
+    // Images a panel is showing, with how many times each is pinned
+    private final Map<Path, Integer> pinned = new HashMap<>();
+    private long totalBytes;
+    private int refsLines;
+    private long duplicates;
+    private long evicted;
+    private long evictedBytes;
+    private ScheduledExecutorService maintenance;
+
+    public CaptureStore(Path directory, Path stateDirectory) throws IOException {
+        this(directory, stateDirectory,
+                TimeUnit.DAYS.toMillis(Long.getLong(MAX_AGE_PROPERTY, 180)),
+                Long.getLong(MAX_SIZE_PROPERTY, 2048) * 1024 * 1024);
+    }
+
+    public CaptureStore(Path directory, Path stateDirectory, long maxAgeMillis, long maxBytes) throws IOException {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.refsFile = stateDirectory.resolve(REFS_FILE);
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(this.directory);
+        Files.createDirectories(stateDirectory);
+        readRefs();
+    }
+
+    private void readRefs() throws IOException {
+        if (!Files.exists(refsFile)) {
+            return;
+        }
+        byte[] log = Files.readAllBytes(refsFile);
+        int end = log.length;
+        while (end > 0 && log[end - 1] != '\n') {
+            end--;
+        }
+        if (end != log.length) {
+            // Half-written last line from a crash; that one analysis is simply not counted
+            try (FileChannel channel = FileChannel.open(refsFile, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            }
+        }
+        for (String line : new String(log, 0, end, StandardCharsets.UTF_8).split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            refsLines++;
+            String[] fields = line.split(FIELD_SEPARATOR);
+            if (fields.length != 2) {
+                continue;
+            }
+            try {
+                int count = Integer.parseInt(fields[1]);
+                if (count > 0) {
+                    refs.put(fields[0], count);
+                } else {
+                    refs.remove(fields[0]);
+                }
+            } catch (NumberFormatException e) {
+                // Unreadable line; skipped
+            }
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Moves a complete file, written anywhere on the same disk, into the store and returns
+     * where it ended up. If the store already has these bytes the file is deleted and the
+     * existing capture returned, touched so it counts as just captured; that capture may back
+     * other uploads and results, so only a commit that created its file may delete it again.
+     */
+    public Commit commit(Path partial, String extension) throws IOException {
+        String hash = ModelFingerprint.sha256(partial);
+        synchronized (this) {
+            Capture existing = captures.get(hash);
+            Path target = existing != null
+                    ? existing.file() : directory.resolve(hash + extension.toLowerCase(Locale.ROOT));
+            if (Files.exists(target)) {
+                Files.delete(partial);
+                // Shows first in the history again, and is safe from the next retention pass
+                FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+                Files.setLastModifiedTime(target, now);
+                track(hash, new Capture(target, Files.size(target), now.toMillis()));
+                duplicates++;
+                return new Commit(target, false);
+            }
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+            BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+            track(hash, new Capture(target, attributes.size(), attributes.lastModifiedTime().toMillis()));
+            return new Commit(target, true);
+        }
+    }
+
+    /**
+     * Counts one more analysis recorded for this image. Images outside the store are ignored.
+     */
+    public void retain(Path image) {
+        Path file = image.toAbsolutePath().normalize();
+        if (!directory.equals(file.getParent()) || !Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            String name = file.getFileName().toString();
+            // Captures from before the store are counted under the hash they will be renamed to
+            String hash = HASH_NAME.matcher(name).matches()
+                    ? name.substring(0, name.indexOf('.')) : ModelFingerprint.sha256(file);
+            synchronized (this) {
+                int count = refs.merge(hash, 1, Integer::sum);
+                appendRef(hash, count);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not count analysis of " + file.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Keeps the image where it is, under its current name, until it is unpinned as often as it
+     * was pinned. For images a panel has open, which would break if renamed or removed.
+     */
+    public synchronized void pin(Path image) {
+        pinned.merge(image.toAbsolutePath().normalize(), 1, Integer::sum);
+    }
+
+    public synchronized void unpin(Path image) {
+        pinned.computeIfPresent(image.toAbsolutePath().normalize(), (path, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private boolean isProtected(Path file, Set<Path> inUse) {
+        return inUse.contains(file) || pinned.containsKey(file);
+    }
+
+    /**
+     * Runs {@link #maintain} shortly after startup and then every few hours. Files in the set
+     * the supplier returns, read on each pass, are left alone.
+     */
+    public synchronized void startMaintenance(Supplier<Set<Path>> inUse) {
+        if (maintenance != null) {
+            return;
+        }
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "capture-store");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                maintain(inUse.get());
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Capture store maintenance failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }, MAINTENANCE_DELAY_SECONDS, TimeUnit.HOURS.toSeconds(MAINTENANCE_PERIOD_HOURS), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Lists the folder, renames old captures to their hash and applies the retention limits.
+     */
+    public void maintain(Set<Path> inUse) throws IOException {
+        Set<Path> protectedFiles = new HashSet<>();
+        for (Path path : inUse) {
+            protectedFiles.add(path.toAbsolutePath().normalize());
+        }
+
+        Map<String, Capture> listed = new HashMap<>();
+        List<Path> legacy = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, CaptureIndex::isCapture)) {
+            for (Path file : files) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                String name = file.getFileName().toString();
+                if (HASH_NAME.matcher(name).matches()) {
+                    listed.put(name.substring(0, name.indexOf('.')),
+                            new Capture(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                } else if (LEGACY_NAME.matcher(name).matches()) {
+                    legacy.add(file);
+                }
+            }
+        }
+        synchronized (this) {
+            // Deleted by hand since the last pass, unless committed while the folder was listed
+            captures.entrySet().removeIf(entry -> {
+                if (listed.containsKey(entry.getKey()) || Files.exists(entry.getValue().file())) {
+                    return false;
+                }
+                totalBytes -= entry.getValue().size();
+                return true;
+            });
+            listed.forEach(this::track);
+        }
+
+        int migrated = 0;
+        for (Path file : legacy) {
+            if (migrate(file, protectedFiles)) {
+                migrated++;
+            }
+        }
+
+        long removedBytes = evict(protectedFiles);
+        compactRefs();
+        synchronized (this) {
+            System.out.println(String.format(Locale.ROOT,
+                    "Capture store: %d captures, %.1f MB; took in %d old captures, removed %.1f MB",
+                    captures.size(), totalBytes / (1024.0 * 1024), migrated, removedBytes / (1024.0 * 1024)));
+        }
+    }
+
+    // Renames an old capture to its hash, or drops it if the store already has the same bytes
+    private boolean migrate(Path file, Set<Path> inUse) {
+        try {
+            String hash = ModelFingerprint.sha256(file);
+            String name = file.getFileName().toString();
+            String extension = name.substring(name.lastIndexOf('.')).toLowerCase(Locale.ROOT);
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            synchronized (this) {
+                // Checked only now, under the lock that pin() takes, as hashing can take a while
+                if (isProtected(file, inUse) || !Files.exists(file)) {
+                    return false;
+                }
+                Capture existing = captures.get(hash);
+                if (existing != null && Files.exists(existing.file())) {
+                    if (modified > existing.modified()) {
+                        Files.setLastModifiedTime(existing.file(), FileTime.fromMillis(modified));
+                        track(hash, new Capture(existing.file(), existing.size(), modified));
+                    }
+                    Files.delete(file);
+                    duplicates++;
+                    return true;
+                }
+                // The modification time moves with the file, so the history order stays the same
+                Path target = directory.resolve(hash + extension);
+                Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+                track(hash, new Capture(target, attributes.size(), modified));
+                return true;
+            }
+        } catch (IOException e) {
+            System.err.println("Could not rename capture " + file.getFileName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private synchronized long evict(Set<Path> protectedFiles) {
+        long now = System.currentTimeMillis();
+        List<Map.Entry<String, Capture>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Capture> entry : captures.entrySet()) {
+            Capture capture = entry.getValue();
+            if (now - capture.modified() > GRACE_MILLIS && !isProtected(capture.file(), protectedFiles)) {
+                candidates.add(entry);
+            }
+        }
+        // Never analysed ones go first, as nothing else refers to them
+        candidates.sort(Comparator.<Map.Entry<String, Capture>, Boolean>comparing(entry -> refs.containsKey(entry.getKey()))
+                .thenComparingLong(entry -> entry.getValue().modified()));
+
+        long removed = 0;
+        for (Map.Entry<String, Capture> entry : candidates) {
+            Capture capture = entry.getValue();
+            boolean expired = maxAgeMillis > 0 && now - capture.modified() > maxAgeMillis;
+            boolean overBudget = maxBytes > 0 && totalBytes > maxBytes;
+            if (!expired && !overBudget) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(capture.file());
+            } catch (IOException e) {
+                System.err.println("Could not remove capture " + capture.file().getFileName() + ": " + e.getMessage());
+                continue;
+            }
+            captures.remove(entry.getKey());
+            totalBytes -= capture.size();
+            removed += capture.size();
+            evicted++;
+            evictedBytes += capture.size();
+        }
+        if (maxBytes > 0 && totalBytes > maxBytes) {
+            System.err.println(String.format(Locale.ROOT,
+                    "Capture store is %.1f MB, over its %.1f MB limit, with only recent or in-use captures left",
+                    totalBytes / (1024.0 * 1024), maxBytes / (1024.0 * 1024)));
+        }
+        return removed;
+    }
+
+    // Rewrites refs.tsv with one line per capture still counted, once most lines are outdated
+    private synchronized void compactRefs() throws IOException {
+        refs.keySet().retainAll(captures.keySet());
+        int stale = refsLines - refs.size();
+        if (stale < 200 || stale < refs.size()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        refs.forEach((hash, count) -> lines.append(hash).append(FIELD_SEPARATOR).append(count).append('\n'));
+        Path temp = refsFile.resolveSibling(REFS_FILE + ".tmp");
+        Files.writeString(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, refsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        refsLines = refs.size();
+    }
+
+    private void appendRef(String hash, int count) {
+        try {
+            Files.writeString(refsFile, hash + FIELD_SEPARATOR + count + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            refsLines++;
+        } catch (IOException e) {
+            System.err.println("Could not record analysis count: " + e.getMessage());
+        }
+    }
+
+    private void track(String hash, Capture capture) {
+        Capture previous = captures.put(hash, capture);
+        if (previous != null) {
+            totalBytes -= previous.size();
+        }
+        totalBytes += capture.size();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(captures.size(), totalBytes, duplicates, evicted, evictedBytes);
+    }
+
+    public synchronized void close() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+            maintenance = null;
+        }
+    }
+
+    private record Capture(Path file, long size, long modified) {
+    }
+
+    /**
+     * The stored file, and whether this commit created it rather than finding the same bytes.
+     */
+    public record Commit(Path file, boolean created) {
+    }
+
+    public record Stats(int captures, long bytes, long duplicates, long evicted, long evictedBytes) {
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d captures, %.1f MB, %d duplicates dropped, %d removed (%.1f MB)",
+                    captures, bytes / (1024.0 * 1024), duplicates, evicted, evictedBytes / (1024.0 * 1024));
+        }
+    }
+}
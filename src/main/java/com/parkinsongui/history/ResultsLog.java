@@ -0,0 +1,473 @@
+package com.parkinsongui.history;
+
+import com.parkinsongui.inference.ModelFingerprint;
+import com.parkinsongui.inference.PredictionResult;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Every analysis result, appended to one file of fixed-size binary records and indexed in
+ * memory by capture hash, day and prediction, so queries over months of history never touch
+ * the disk.
+ *
+ * The file starts with a 16-byte header (magic, version, record size). Each 64-byte record
+ * holds the time, the SHA-256 of the image, probability, confidence, inference time and
+ * prediction, followed by a CRC32 of the rest; a record torn by a crash fails its check and
+ * is cut off when the log is opened.
+ *
+ * {@link #append} never blocks: a single writer thread takes everything queued, writes it in
+ * one go and syncs it to disk once for the whole batch.
+ */
+public class ResultsLog {
+    private static final int MAGIC = 0x50445231; // "PDR1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 64;
+    private static final int CRC_OFFSET = RECORD_SIZE - 4;
+    private static final int MAX_BATCH = 256;
+    // How long the writer waits for more results to share a sync with
+    private static final long LINGER_MILLIS = 20;
+    private static final Pattern HASH_NAME = Pattern.compile("[0-9a-f]{64}\\..+");
+    private static final HexFormat HEX = HexFormat.of();
+
+    public enum Prediction {
+        HEALTHY("Healthy"),
+        PARKINSONS("Parkinson's Disease");
+
+        private final String label;
+
+        Prediction(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        public static Prediction of(PredictionResult result) {
+            return "Healthy".equalsIgnoreCase(result.result()) ? HEALTHY : PARKINSONS;
+        }
+    }
+
+    private final Path logFile;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final Thread writer;
+    private volatile boolean closing;
+    private FileChannel channel;
+
+    private final List<Result> results = new ArrayList<>();
+    private final Map<String, List<Integer>> byHash = new HashMap<>();
+    private final TreeMap<Long, List<Integer>> byDay = new TreeMap<>();
+    private final Map<Prediction, List<Integer>> byPrediction = new EnumMap<>(Prediction.class);
+    private long currentDay;
+    private long dayStart;
+    private long dayEnd = Long.MIN_VALUE;
+
+    public ResultsLog(Path logFile) {
+        this.logFile = logFile;
+        writer = new Thread(this::run, "results-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues the result for the image; the future completes once it is on disk and visible to
+     * queries. Cheap enough to call on the FX thread.
+     */
+    public CompletableFuture<Result> append(Path image, PredictionResult prediction) {
+        Pending pending = new Pending(image, prediction, System.currentTimeMillis(), new CompletableFuture<>());
+        if (closing) {
+            pending.done().completeExceptionally(new IOException("Results log is closed"));
+        } else {
+            queue.add(pending);
+        }
+        return pending.done();
+    }
+
+    private void run() {
+        try {
+            open();
+        } catch (IOException e) {
+            System.err.println("Results log disabled: " + e.getMessage());
+            e.printStackTrace();
+            channel = null;
+        } finally {
+            loaded.countDown();
+        }
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_BATCH * RECORD_SIZE);
+        while (true) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closing) {
+                        break;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                Pending next;
+                while (batch.size() < MAX_BATCH
+                        && (next = queue.poll(LINGER_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    batch.add(next);
+                    queue.drainTo(batch, MAX_BATCH - batch.size());
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            write(batch, buffer);
+            batch.clear();
+        }
+        closeChannel();
+    }
+
+    private void write(List<Pending> batch, ByteBuffer buffer) {
+        List<Result> written = new ArrayList<>(batch.size());
+        buffer.clear();
+        for (Pending pending : batch) {
+            try {
+                Result result = new Result(pending.time(), hashOf(pending.image()), Prediction.of(pending.prediction()),
+                        pending.prediction().confidenceScore(), pending.prediction().probabilityScore(),
+                        pending.prediction().inferenceTime());
+                encode(result, buffer);
+                written.add(result);
+            } catch (IOException e) {
+                pending.done().completeExceptionally(e);
+                written.add(null);
+            }
+        }
+        buffer.flip();
+        long start = -1;
+        try {
+            if (channel == null) {
+                throw new IOException("Results log is not open");
+            }
+            start = channel.size();
+            long position = start;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            // One sync for the whole batch instead of one per result
+            channel.force(false);
+        } catch (IOException e) {
+            System.err.println("Could not write results log: " + e.getMessage());
+            if (start >= 0) {
+                // A half-written batch would fail its check on reopen and cut off every later record
+                try {
+                    channel.truncate(start);
+                } catch (IOException ignored) {
+                    // Still cut off on the next open
+                }
+            }
+            for (Pending pending : batch) {
+                pending.done().completeExceptionally(e);
+            }
+            return;
+        }
+        synchronized (this) {
+            for (Result result : written) {
+                if (result != null) {
+                    index(result);
+                }
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (written.get(i) != null) {
+                batch.get(i).done().complete(written.get(i));
+            }
+        }
+    }
+
+    // Captures in the store are named by their hash; anything else is hashed here
+    private static String hashOf(Path image) throws IOException {
+        String name = image.getFileName().toString();
+        if (HASH_NAME.matcher(name).matches()) {
+            return name.substring(0, 64);
+        }
+        return ModelFingerprint.sha256(image);
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(logFile.toAbsolutePath().getParent());
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0).flip();
+            channel.truncate(0);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != RECORD_SIZE) {
+            throw new IOException("Not a results log, or written by a newer version: " + logFile);
+        }
+
+        long end = HEADER_SIZE;
+        long size = channel.size();
+        ByteBuffer chunk = ByteBuffer.allocateDirect(1024 * RECORD_SIZE);
+        long position = HEADER_SIZE;
+        synchronized (this) {
+            reading:
+            while (position < size) {
+                chunk.clear();
+                chunk.limit((int) Math.min(chunk.capacity(), size - position));
+                readFully(chunk, position);
+                chunk.flip();
+                while (chunk.remaining() >= RECORD_SIZE) {
+                    Result result = decode(chunk);
+                    if (result == null) {
+                        // Torn by a crash; everything from here on was never acknowledged
+                        break reading;
+                    }
+                    index(result);
+                    end += RECORD_SIZE;
+                }
+                if (chunk.hasRemaining()) {
+                    break;
+                }
+                position += chunk.limit();
+            }
+        }
+        if (end != size) {
+            System.err.println("Results log: dropped " + (size - end) + " bytes of an unfinished write");
+            channel.truncate(end);
+        }
+        System.out.println("Results log: " + results.size() + " results");
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Results log ended early");
+            }
+        }
+    }
+
+    private static void encode(Result result, ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putLong(result.time());
+        buffer.put(HEX.parseHex(result.captureHash()));
+        buffer.putDouble(result.probability());
+        buffer.putFloat(result.confidence());
+        buffer.putFloat(result.inferenceTime());
+        buffer.put((byte) result.prediction().ordinal());
+        buffer.put(new byte[3]);
+        buffer.putInt((int) crc(buffer, start));
+    }
+
+    private static Result decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        long expected = buffer.getInt(start + CRC_OFFSET) & 0xFFFFFFFFL;
+        buffer.position(start + CRC_OFFSET);
+        if (crc(buffer, start) != expected) {
+            buffer.position(start);
+            return null;
+        }
+        buffer.position(start);
+        long time = buffer.getLong();
+        byte[] hash = new byte[32];
+        buffer.get(hash);
+        double probability = buffer.getDouble();
+        float confidence = buffer.getFloat();
+        float inferenceTime = buffer.getFloat();
+        int prediction = buffer.get();
+        buffer.position(start + RECORD_SIZE);
+        if (prediction < 0 || prediction >= Prediction.values().length) {
+            return null;
+        }
+        return new Result(time, HEX.formatHex(hash), Prediction.values()[prediction], confidence, probability, inferenceTime);
+    }
+
+    // CRC of the record bytes from start up to the buffer's position
+    private static long crc(ByteBuffer buffer, int start) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(start).limit(buffer.position()));
+        return crc.getValue();
+    }
+
+    private void index(Result result) {
+        int number = results.size();
+        results.add(result);
+        byHash.computeIfAbsent(result.captureHash(), hash -> new ArrayList<>(1)).add(number);
+        byDay.computeIfAbsent(day(result.time()), day -> new ArrayList<>()).add(number);
+        byPrediction.computeIfAbsent(result.prediction(), prediction -> new ArrayList<>()).add(number);
+    }
+
+    // Results come in time order, so the day of the previous one almost always answers
+    private long day(long millis) {
+        if (millis < dayStart || millis >= dayEnd) {
+            LocalDate date = Instant.ofEpochMilli(millis).atZone(zone).toLocalDate();
+            currentDay = date.toEpochDay();
+            dayStart = date.atStartOfDay(zone).toInstant().toEpochMilli();
+            dayEnd = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+        return currentDay;
+    }
+
+    // Queries wait for the log to be read once, so call them off the FX thread at startup
+    private void awaitLoaded() {
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Every result for the capture with this hash, oldest first.
+     */
+    public List<Result> forCapture(String captureHash) {
+        awaitLoaded();
+        synchronized (this) {
+            return collect(byHash.getOrDefault(captureHash, List.of()));
+        }
+    }
+
+    /**
+     * The most recent result for each of these hashes that has one.
+     */
+    public Map<String, Result> latestFor(Iterable<String> captureHashes) {
+        awaitLoaded();
+        Map<String, Result> latest = new HashMap<>();
+        synchronized (this) {
+            for (String hash : captureHashes) {
+                List<Integer> numbers = byHash.get(hash);
+                if (numbers != null) {
+                    latest.put(hash, results.get(numbers.get(numbers.size() - 1)));
+                }
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Results from the first to the last day inclusive, in the local time zone, optionally only
+     * one prediction; null days leave that end open.
+     */
+    public List<Result> query(LocalDate from, LocalDate to, Prediction prediction) {
+        awaitLoaded();
+        synchronized (this) {
+            if (prediction != null && from == null && to == null) {
+                return collect(byPrediction.getOrDefault(prediction, List.of()));
+            }
+            long first = from == null ? Long.MIN_VALUE : from.toEpochDay();
+            long last = to == null ? Long.MAX_VALUE : to.toEpochDay();
+            List<Result> matches = new ArrayList<>();
+            for (List<Integer> day : byDay.subMap(first, true, last, true).values()) {
+                for (int number : day) {
+                    Result result = results.get(number);
+                    if (prediction == null || result.prediction() == prediction) {
+                        matches.add(result);
+                    }
+                }
+            }
+            return matches;
+        }
+    }
+
+    public int count(Prediction prediction) {
+        awaitLoaded();
+        synchronized (this) {
+            return byPrediction.getOrDefault(prediction, List.of()).size();
+        }
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    private List<Result> collect(List<Integer> numbers) {
+        List<Result> collected = new ArrayList<>(numbers.size());
+        for (int number : numbers) {
+            collected.add(results.get(number));
+        }
+        return collected;
+    }
+
+    /**
+     * Writes every result, oldest first, as CSV. Rows are formatted one at a time straight into
+     * the writer, so the export costs no more memory than the results themselves. Returns the
+     * number of rows.
+     */
+    public int exportCsv(Writer out) throws IOException {
+        awaitLoaded();
+        List<Result> snapshot;
+        synchronized (this) {
+            snapshot = List.copyOf(results);
+        }
+        out.write("time,capture_sha256,prediction,confidence,probability,inference_ms\n");
+        for (Result result : snapshot) {
+            out.write(Instant.ofEpochMilli(result.time()).toString());
+            out.write(',');
+            out.write(result.captureHash());
+            out.write(',');
+            // The label has an apostrophe but no comma or quote, so it needs no escaping
+            out.write(result.prediction().label());
+            out.write(String.format(Locale.ROOT, ",%.4f,%.6f,%.3f\n",
+                    result.confidence(), result.probability(), result.inferenceTime()));
+        }
+        out.flush();
+        return snapshot.size();
+    }
+
+    /**
+     * Writes out what is still queued and closes the file.
+     */
+    public void close() {
+        closing = true;
+        try {
+            // Let the last queued results reach the disk before the JVM exits
+            writer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing results log: " + e.getMessage());
+            }
+        }
+    }
+
+    private record Pending(Path image, PredictionResult prediction, long time, CompletableFuture<Result> done) {
+    }
+
+    public record Result(long time, String captureHash, Prediction prediction, float confidence,
+                         double probability, float inferenceTime) {
+    }
+}
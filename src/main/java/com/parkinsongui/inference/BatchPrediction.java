@@ -0,0 +1,11 @@
+package com.parkinsongui.inference;
+
+/**
+ * One image of a batch run. Exactly one of prediction and error is set.
+ */
+public record BatchPrediction(String imagePath, PredictionResult prediction, String error) {
+
+    public boolean succeeded() {
+        return prediction != null;
+    }
+}
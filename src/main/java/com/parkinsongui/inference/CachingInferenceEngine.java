@@ -0,0 +1,140 @@
+package com.parkinsongui.inference;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Answers repeated analyses of the same image bytes from a {@link ResultCache} and only
+ * forwards misses to the wrapped engine. When the engine's model file changes the cache
+ * is reopened for the new fingerprint, which drops every result of the old model.
+ */
+public class CachingInferenceEngine implements InferenceEngine {
+    private final InferenceEngine delegate;
+    private final Path indexFile;
+    private final ExecutorService hashExecutor = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "result-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ResultCache cache;
+
+    public CachingInferenceEngine(InferenceEngine delegate, Path indexFile) {
+        this.delegate = delegate;
+        this.indexFile = indexFile;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Path getModelPath() {
+        return delegate.getModelPath();
+    }
+
+    @Override
+    public CompletableFuture<PredictionResult> predict(String imagePath, ProgressListener listener) {
+        return CompletableFuture.supplyAsync(() -> cacheKey(imagePath), hashExecutor)
+                .thenCompose(key -> {
+                    PredictionResult cached = key == null ? null : key.cache().get(key.imageHash());
+                    if (cached != null) {
+                        listener.onStage(InferenceStage.DONE);
+                        return CompletableFuture.completedFuture(cached);
+                    }
+                    return delegate.predict(imagePath, listener).thenApply(result -> {
+                        if (key != null) {
+                            key.cache().put(key.imageHash(), result);
+                        }
+                        return result;
+                    });
+                });
+    }
+
+    @Override
+    public CompletableFuture<List<BatchPrediction>> predictBatch(List<String> imagePaths) {
+        return CompletableFuture.supplyAsync(() -> imagePaths.stream().map(this::cacheKey).toList(), hashExecutor)
+                .thenCompose(keys -> {
+                    BatchPrediction[] predictions = new BatchPrediction[imagePaths.size()];
+                    List<String> misses = new ArrayList<>();
+                    List<Integer> missIndexes = new ArrayList<>();
+                    for (int i = 0; i < imagePaths.size(); i++) {
+                        CacheKey key = keys.get(i);
+                        PredictionResult cached = key == null ? null : key.cache().get(key.imageHash());
+                        if (cached != null) {
+                            predictions[i] = new BatchPrediction(imagePaths.get(i), cached, null);
+                        } else {
+                            misses.add(imagePaths.get(i));
+                            missIndexes.add(i);
+                        }
+                    }
+                    if (misses.isEmpty()) {
+                        return CompletableFuture.completedFuture(List.of(predictions));
+                    }
+                    return delegate.predictBatch(misses).thenApply(results -> {
+                        for (int i = 0; i < results.size(); i++) {
+                            int index = missIndexes.get(i);
+                            BatchPrediction result = results.get(i);
+                            CacheKey key = keys.get(index);
+                            if (result.succeeded() && key != null) {
+                                key.cache().put(key.imageHash(), result.prediction());
+                            }
+                            predictions[index] = result;
+                        }
+                        return List.of(predictions);
+                    });
+                });
+    }
+
+    // Null when the image or model cannot be hashed; the prediction then simply bypasses the cache
+    private CacheKey cacheKey(String imagePath) {
+        try {
+            ResultCache current = currentCache();
+            if (current == null) {
+                return null;
+            }
+            return new CacheKey(current, ResultCache.imageKey(Paths.get(imagePath)));
+        } catch (IOException e) {
+            System.err.println("Result cache skipped for " + imagePath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private synchronized ResultCache currentCache() throws IOException {
+        Path modelPath = delegate.getModelPath();
+        if (modelPath == null || !modelPath.toFile().exists()) {
+            return null;
+        }
+        String modelHash = ModelFingerprint.of(modelPath).sha256();
+        if (cache == null || !cache.getModelHash().equals(modelHash)) {
+            if (cache != null) {
+                System.out.println("Model changed, discarding cached results");
+                cache.close();
+            }
+            cache = new ResultCache(indexFile, modelHash);
+        }
+        return cache;
+    }
+
+    @Override
+    public void shutdown() {
+        hashExecutor.shutdownNow();
+        delegate.shutdown();
+        synchronized (this) {
+            if (cache != null) {
+                cache.close();
+            }
+        }
+    }
+
+    private record CacheKey(ResultCache cache, String imageHash) {
+    }
+}
@@ -0,0 +1,425 @@
+package com.parkinsongui.inference;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Turns an image file into the model's 224x224x3 float input. Large pictures are first
+ * shrunk by averaging whole blocks of pixels (a box filter, so fine pen strokes are not
+ * skipped over as with point subsampling), then a port of Pillow's bicubic resample produces
+ * the same bytes as detection.py's img.resize(). Keep {@link #subsampling(int)},
+ * {@link #reduce} and the resample in sync with open_rgb_image() there; the Gradle task
+ * parityCheck compares the two on python/samples.
+ */
+public final class ImagePreprocessor {
+    public static final int INPUT_SIZE = 224;
+    public static final int TENSOR_LENGTH = INPUT_SIZE * INPUT_SIZE * 3;
+
+    // Pillow's fixed point precision for 8 bit resampling (libImaging/Resample.c)
+    private static final int PRECISION_BITS = 32 - 8 - 2;
+    private static final double BICUBIC_A = -0.5;
+    private static final double BICUBIC_SUPPORT = 2.0;
+
+    // Decoded pixels held at once while reducing a large picture; every strip re-decodes the
+    // file up to its first row, so strips are as tall as this allows rather than one block
+    private static final int STRIP_PIXELS = 1 << 22;
+
+    // numpy computes img / 255.0 in double and the model casts to float32, so round the same way
+    private static final float[] NORMALIZED = new float[256];
+
+    static {
+        for (int i = 0; i < NORMALIZED.length; i++) {
+            NORMALIZED[i] = (float) (i / 255.0);
+        }
+    }
+
+    private ImagePreprocessor() {
+    }
+
+    public static FloatBuffer preprocess(File imageFile) throws IOException {
+        FloatBuffer tensor = FloatBuffer.allocate(TENSOR_LENGTH);
+        preprocess(imageFile, tensor);
+        tensor.flip();
+        return tensor;
+    }
+
+    /**
+     * Writes TENSOR_LENGTH floats (HWC, RGB, 0..1) at the buffer's current position.
+     */
+    public static void preprocess(File imageFile, FloatBuffer out) throws IOException {
+        BufferedImage image = readReduced(imageFile);
+        toTensor(image, out);
+    }
+
+    public static void toTensor(BufferedImage image, FloatBuffer out) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        resample(rgbPixels(image), width, height, out);
+    }
+
+    /**
+     * Decodes the image and box-reduces it to at least twice the input size per axis. Pictures
+     * that need reducing are decoded a strip of whole block rows at a time, so a large photo
+     * never has to be held at full resolution.
+     */
+    public static BufferedImage readReduced(File imageFile) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(imageFile)) {
+            if (input == null) {
+                throw new IOException("Cannot open image: " + imageFile);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image: " + imageFile);
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                // Not seek-forward-only: each strip seeks back to the start of the image
+                reader.setInput(input, false, true);
+                return readReduced(reader);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage readReduced(ImageReader reader) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        int stepX = subsampling(width);
+        int stepY = subsampling(height);
+        ImageReadParam param = reader.getDefaultReadParam();
+        if (stepX == 1 && stepY == 1) {
+            return reader.read(0, param);
+        }
+
+        BufferedImage reduced = reducedImage(width, height, stepX, stepY);
+        int stripHeight = stepY * Math.max(1, STRIP_PIXELS / (width * stepY));
+        BufferedImage strip = null;
+        for (int top = 0; top < height; top += stripHeight) {
+            int rows = Math.min(stripHeight, height - top);
+            param.setSourceRegion(new Rectangle(0, top, width, rows));
+            // The last strip may be shorter; it fills the top of the reused one
+            param.setDestination(strip);
+            strip = reader.read(0, param);
+            reduceRows(strip, rows, top / stepY, stepX, stepY, reduced);
+        }
+        return reduced;
+    }
+
+    /**
+     * Block size per axis that keeps at least twice the input size, mirroring
+     * subsampling_factors() in detection.py.
+     */
+    public static int subsampling(int size) {
+        return Math.max(1, size / (INPUT_SIZE * 2));
+    }
+
+    /**
+     * Replaces each block of {@link #subsampling} pixels per axis with its mean, rounded half
+     * up; the blocks along the right and bottom edges may be smaller and average what they
+     * have. Integer arithmetic throughout, the same as box_reduce() in detection.py.
+     */
+    public static BufferedImage reduce(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int stepX = subsampling(width);
+        int stepY = subsampling(height);
+        if (stepX == 1 && stepY == 1) {
+            return image;
+        }
+        BufferedImage reduced = reducedImage(width, height, stepX, stepY);
+        reduceRows(image, height, 0, stepX, stepY, reduced);
+        return reduced;
+    }
+
+    private static BufferedImage reducedImage(int width, int height, int stepX, int stepY) {
+        return new BufferedImage((width + stepX - 1) / stepX, (height + stepY - 1) / stepY,
+                BufferedImage.TYPE_INT_RGB);
+    }
+
+    // Reduces the first rowCount rows of source, a whole number of block rows unless they end
+    // the picture, into reduced starting at block row firstBlockRow
+    private static void reduceRows(BufferedImage source, int rowCount, int firstBlockRow,
+                                   int stepX, int stepY, BufferedImage reduced) {
+        int width = source.getWidth();
+        int reducedWidth = reduced.getWidth();
+        int[] rows = new int[width * stepY];
+        int[] sums = new int[reducedWidth * 3];
+        int[] line = new int[reducedWidth];
+        for (int top = 0; top < rowCount; top += stepY) {
+            int blockHeight = Math.min(stepY, rowCount - top);
+            rgbPixels(source, top, blockHeight, rows);
+            Arrays.fill(sums, 0);
+            for (int y = 0; y < blockHeight; y++) {
+                int row = y * width;
+                for (int bx = 0; bx < reducedWidth; bx++) {
+                    int end = Math.min(width, (bx + 1) * stepX);
+                    int r = 0;
+                    int g = 0;
+                    int b = 0;
+                    for (int x = bx * stepX; x < end; x++) {
+                        int pixel = rows[row + x];
+                        r += (pixel >> 16) & 0xFF;
+                        g += (pixel >> 8) & 0xFF;
+                        b += pixel & 0xFF;
+                    }
+                    sums[bx * 3] += r;
+                    sums[bx * 3 + 1] += g;
+                    sums[bx * 3 + 2] += b;
+                }
+            }
+            for (int bx = 0; bx < reducedWidth; bx++) {
+                int count = blockHeight * (Math.min(width, (bx + 1) * stepX) - bx * stepX);
+                int half = count / 2;
+                line[bx] = (((sums[bx * 3] + half) / count) << 16)
+                        | (((sums[bx * 3 + 1] + half) / count) << 8)
+                        | ((sums[bx * 3 + 2] + half) / count);
+            }
+            reduced.setRGB(0, firstBlockRow + top / stepY, reducedWidth, 1, line, 0, reducedWidth);
+        }
+    }
+
+    private static int[] rgbPixels(BufferedImage image) {
+        int[] pixels = new int[image.getWidth() * image.getHeight()];
+        rgbPixels(image, 0, image.getHeight(), pixels);
+        return pixels;
+    }
+
+    // Equivalent of PIL's convert('RGB'): alpha is dropped, gray is replicated without a gamma change
+    private static void rgbPixels(BufferedImage image, int top, int rows, int[] out) {
+        int width = image.getWidth();
+        Raster raster = image.getRaster();
+
+        if (raster.getNumBands() == 1 && raster.getSampleModel().getSampleSize(0) == 8
+                && image.getType() != BufferedImage.TYPE_BYTE_INDEXED
+                && image.getType() != BufferedImage.TYPE_BYTE_BINARY) {
+            raster.getSamples(0, top, width, rows, 0, out);
+            for (int i = 0; i < width * rows; i++) {
+                int v = out[i];
+                out[i] = (v << 16) | (v << 8) | v;
+            }
+            return;
+        }
+        image.getRGB(0, top, width, rows, out, 0, width);
+    }
+
+    private static void resample(int[] pixels, int width, int height, FloatBuffer out) {
+        Coefficients horizontal = Coefficients.compute(width, INPUT_SIZE);
+        Coefficients vertical = Coefficients.compute(height, INPUT_SIZE);
+
+        boolean needHorizontal = width != INPUT_SIZE;
+        boolean needVertical = height != INPUT_SIZE;
+
+        // Horizontal pass over only the rows the vertical pass will read, as Pillow does
+        int firstRow = needVertical ? vertical.bounds[0] : 0;
+        int lastRow = needVertical
+                ? vertical.bounds[(INPUT_SIZE - 1) * 2] + vertical.bounds[(INPUT_SIZE - 1) * 2 + 1]
+                : height;
+        int rows = lastRow - firstRow;
+
+        int[] current = pixels;
+        int currentWidth = width;
+        int rowOffset = 0;
+
+        if (needHorizontal) {
+            int[] temp = new int[INPUT_SIZE * rows];
+            for (int y = 0; y < rows; y++) {
+                int srcRow = (y + firstRow) * width;
+                for (int x = 0; x < INPUT_SIZE; x++) {
+                    int min = horizontal.bounds[x * 2];
+                    int count = horizontal.bounds[x * 2 + 1];
+                    int k = x * horizontal.kernelSize;
+                    int r = 1 << (PRECISION_BITS - 1);
+                    int g = r;
+                    int b = r;
+                    for (int i = 0; i < count; i++) {
+                        int pixel = pixels[srcRow + min + i];
+                        int weight = horizontal.weights[k + i];
+                        r += ((pixel >> 16) & 0xFF) * weight;
+                        g += ((pixel >> 8) & 0xFF) * weight;
+                        b += (pixel & 0xFF) * weight;
+                    }
+                    temp[y * INPUT_SIZE + x] = (clip8(r) << 16) | (clip8(g) << 8) | clip8(b);
+                }
+            }
+            current = temp;
+            currentWidth = INPUT_SIZE;
+            rowOffset = firstRow;
+        }
+
+        if (!needVertical) {
+            for (int y = 0; y < INPUT_SIZE; y++) {
+                for (int x = 0; x < INPUT_SIZE; x++) {
+                    putPixel(out, current[y * currentWidth + x]);
+                }
+            }
+            return;
+        }
+
+        for (int y = 0; y < INPUT_SIZE; y++) {
+            int min = vertical.bounds[y * 2] - rowOffset;
+            int count = vertical.bounds[y * 2 + 1];
+            int k = y * vertical.kernelSize;
+            for (int x = 0; x < INPUT_SIZE; x++) {
+                int r = 1 << (PRECISION_BITS - 1);
+                int g = r;
+                int b = r;
+                for (int i = 0; i < count; i++) {
+                    int pixel = current[(min + i) * currentWidth + x];
+                    int weight = vertical.weights[k + i];
+                    r += ((pixel >> 16) & 0xFF) * weight;
+                    g += ((pixel >> 8) & 0xFF) * weight;
+                    b += (pixel & 0xFF) * weight;
+                }
+                out.put(NORMALIZED[clip8(r)]);
+                out.put(NORMALIZED[clip8(g)]);
+                out.put(NORMALIZED[clip8(b)]);
+            }
+        }
+    }
+
+    private static void putPixel(FloatBuffer out, int pixel) {
+        out.put(NORMALIZED[(pixel >> 16) & 0xFF]);
+        out.put(NORMALIZED[(pixel >> 8) & 0xFF]);
+        out.put(NORMALIZED[pixel & 0xFF]);
+    }
+
+    private static int clip8(int value) {
+        if (value >= (1 << PRECISION_BITS << 8)) {
+            return 255;
+        }
+        if (value <= 0) {
+            return 0;
+        }
+        return value >> PRECISION_BITS;
+    }
+
+    private static double bicubic(double x) {
+        if (x < 0.0) {
+            x = -x;
+        }
+        if (x < 1.0) {
+            return ((BICUBIC_A + 2.0) * x - (BICUBIC_A + 3.0)) * x * x + 1;
+        }
+        if (x < 2.0) {
+            return (((x - 5) * x + 8) * x - 4) * BICUBIC_A;
+        }
+        return 0.0;
+    }
+
+    /**
+     * precompute_coeffs() + normalize_coeffs_8bpc() from Pillow, for a full-image box.
+     */
+    private static final class Coefficients {
+        final int kernelSize;
+        final int[] bounds;
+        final int[] weights;
+
+        private Coefficients(int kernelSize, int[] bounds, int[] weights) {
+            this.kernelSize = kernelSize;
+            this.bounds = bounds;
+            this.weights = weights;
+        }
+
+        static Coefficients compute(int inSize, int outSize) {
+            double scale = (double) inSize / outSize;
+            double filterScale = Math.max(scale, 1.0);
+            double support = BICUBIC_SUPPORT * filterScale;
+            int kernelSize = (int) Math.ceil(support) * 2 + 1;
+
+            int[] bounds = new int[outSize * 2];
+            int[] weights = new int[outSize * kernelSize];
+            double[] kernel = new double[kernelSize];
+
+            for (int xx = 0; xx < outSize; xx++) {
+                double center = (xx + 0.5) * scale;
+                double ss = 1.0 / filterScale;
+
+                int min = (int) (center - support + 0.5);
+                if (min < 0) {
+                    min = 0;
+                }
+                int max = (int) (center + support + 0.5);
+                if (max > inSize) {
+                    max = inSize;
+                }
+                max -= min;
+
+                double total = 0.0;
+                for (int x = 0; x < max; x++) {
+                    double w = bicubic((x + min - center + 0.5) * ss);
+                    kernel[x] = w;
+                    total += w;
+                }
+                for (int x = 0; x < max; x++) {
+                    double w = total != 0.0 ? kernel[x] / total : kernel[x];
+                    weights[xx * kernelSize + x] = w < 0
+                            ? (int) (-0.5 + w * (1 << PRECISION_BITS))
+                            : (int) (0.5 + w * (1 << PRECISION_BITS));
+                }
+                bounds[xx * 2] = min;
+                bounds[xx * 2 + 1] = max;
+            }
+            return new Coefficients(kernelSize, bounds, weights);
+        }
+    }
+
+    /**
+     * Dumps tensors as raw little-endian float32, for python/parity_check.py: one image to one
+     * file, or every image in a directory to "&lt;name&gt;.f32" in another (the parityCheck task).
+     * Usage: ImagePreprocessor image.jpg tensor.f32 | ImagePreprocessor images/ tensors/
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ImagePreprocessor <image> <output.f32> | <image dir> <output dir>");
+            System.exit(1);
+        }
+        Path source = Path.of(args[0]);
+        if (!Files.isDirectory(source)) {
+            dump(source, Path.of(args[1]));
+            return;
+        }
+        Path outputDirectory = Files.createDirectories(Path.of(args[1]));
+        List<Path> images;
+        try (Stream<Path> files = Files.list(source)) {
+            images = files.filter(Files::isRegularFile).sorted().toList();
+        }
+        for (Path image : images) {
+            dump(image, outputDirectory.resolve(image.getFileName() + ".f32"));
+        }
+    }
+
+    private static void dump(Path image, Path output) throws IOException {
+        FloatBuffer tensor = preprocess(image.toFile());
+        ByteBuffer bytes = ByteBuffer.allocate(TENSOR_LENGTH * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asFloatBuffer().put(tensor);
+
+        try (RandomAccessFile file = new RandomAccessFile(output.toFile(), "rw");
+             FileChannel channel = file.getChannel()) {
+            channel.truncate(0);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+        System.out.println("Wrote " + TENSOR_LENGTH + " floats to " + output);
+    }
+}
@@ -0,0 +1,60 @@
+package com.parkinsongui.inference;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Something that turns an image on disk into a prediction. The engine is picked once at
+ * startup with --engine=python|onnx (or -Dparkinson.engine) and shared by every panel.
+ */
+public interface InferenceEngine {
+    String ENGINE_PROPERTY = "parkinson.engine";
+
+    String getName();
+
+    /**
+     * The model file predictions come from; results are only reusable while it is unchanged.
+     */
+    Path getModelPath();
+
+    /**
+     * Size, hash and architecture of the current model. Cheap after the first call per version.
+     */
+    default ModelDescriptor describeModel() throws IOException {
+        return ModelDescriptor.of(getModelPath());
+    }
+
+    default CompletableFuture<PredictionResult> predict(String imagePath) {
+        return predict(imagePath, ProgressListener.NONE);
+    }
+
+    /**
+     * Like {@link #predict(String)}, reporting each stage as it starts and DONE at the end.
+     */
+    CompletableFuture<PredictionResult> predict(String imagePath, ProgressListener listener);
+
+    /**
+     * Predicts a group of images with a single model call. Images that cannot be
+     * loaded come back as failed entries instead of failing the whole batch.
+     */
+    CompletableFuture<List<BatchPrediction>> predictBatch(List<String> imagePaths);
+
+    void shutdown();
+
+    static InferenceEngine create(String name) {
+        if (name == null || name.isBlank()) {
+            name = System.getProperty(ENGINE_PROPERTY, "python");
+        }
+        return switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "onnx" -> new OnnxInferenceEngine();
+            case "python" -> new PythonInferenceEngine();
+            default -> {
+                System.err.println("Unknown inference engine '" + name + "', falling back to python");
+                yield new PythonInferenceEngine();
+            }
+        };
+    }
+}
@@ -0,0 +1,117 @@
+package com.parkinsongui.inference;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queues analysis requests over a fixed pool of Python workers. Each worker has its own
+ * request queue; a new request goes to the worker with the fewest queued or running jobs.
+ * Workers are only spawned once a request actually reaches them.
+ */
+public class InferenceScheduler {
+    private static final String POOL_SIZE_PROPERTY = "parkinson.workers";
+
+    private final WorkerSlot[] slots;
+
+    public InferenceScheduler() {
+        this(defaultPoolSize());
+    }
+
+    public InferenceScheduler(int poolSize) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threadsPerWorker = Math.max(1, cores / poolSize);
+
+        slots = new WorkerSlot[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            slots[i] = new WorkerSlot(i, threadsPerWorker);
+        }
+        System.out.println("Inference pool: " + poolSize + " worker(s), " + threadsPerWorker + " thread(s) each");
+    }
+
+    private static int defaultPoolSize() {
+        String configured = System.getProperty(POOL_SIZE_PROPERTY);
+        if (configured != null) {
+            try {
+                return Math.max(1, Integer.parseInt(configured.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid " + POOL_SIZE_PROPERTY + ": " + configured);
+            }
+        }
+        // Every worker holds its own TensorFlow runtime, so stay well below one per core
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(4, cores / 2));
+    }
+
+    public CompletableFuture<PredictionResult> submit(String imagePath, ProgressListener listener) {
+        return dispatch(manager -> {
+            BatchPrediction prediction = manager.predictImages(List.of(imagePath), listener).get(0);
+            if (!prediction.succeeded()) {
+                throw new IOException(prediction.error());
+            }
+            return prediction.prediction();
+        });
+    }
+
+    public CompletableFuture<List<BatchPrediction>> submitBatch(List<String> imagePaths) {
+        return dispatch(manager -> manager.predictImages(imagePaths, ProgressListener.NONE));
+    }
+
+    private <T> CompletableFuture<T> dispatch(Job<T> job) {
+        WorkerSlot slot = reserveLeastLoaded();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return job.run(slot.manager);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                slot.pending.decrementAndGet();
+            }
+        }, slot.executor);
+    }
+
+    private synchronized WorkerSlot reserveLeastLoaded() {
+        WorkerSlot best = slots[0];
+        for (WorkerSlot slot : slots) {
+            if (slot.pending.get() < best.pending.get()) {
+                best = slot;
+            }
+        }
+        best.pending.incrementAndGet();
+        return best;
+    }
+
+    public int getPoolSize() {
+        return slots.length;
+    }
+
+    public void shutdown() {
+        for (WorkerSlot slot : slots) {
+            slot.executor.shutdownNow();
+            slot.manager.shutdown();
+        }
+    }
+
+    private interface Job<T> {
+        T run(InferenceWorkerManager manager) throws IOException;
+    }
+
+    private static class WorkerSlot {
+        private final InferenceWorkerManager manager;
+        private final ExecutorService executor;
+        private final AtomicInteger pending = new AtomicInteger();
+
+        WorkerSlot(int index, int threadsPerWorker) {
+            manager = new InferenceWorkerManager(threadsPerWorker);
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "inference-worker-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.parkinsongui.inference;
+
+/**
+ * Where a prediction currently is. The codes are shared with worker_protocol.py.
+ */
+public enum InferenceStage {
+    // Java only: process spawn and the TensorFlow import, before the worker can report anything
+    WORKER_STARTING(6, "Starting worker", 0.05),
+    MODEL_LOADING(1, "Loading model", 0.1),
+    DECODING(2, "Decoding image", 0.3),
+    PREPROCESSING(3, "Preprocessing", 0.5),
+    PREDICTING(4, "Predicting", 0.75),
+    DONE(5, "Done", 1.0);
+
+    private final int code;
+    private final String label;
+    private final double progress;
+
+    InferenceStage(int code, String label, double progress) {
+        this.code = code;
+        this.label = label;
+        this.progress = progress;
+    }
+
+    public int code() {
+        return code;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    /**
+     * Rough share of a cold prediction that is over once this stage starts, for progress bars.
+     */
+    public double progress() {
+        return progress;
+    }
+
+    public static InferenceStage fromCode(int code) {
+        for (InferenceStage stage : values()) {
+            if (stage.code == code) {
+                return stage;
+            }
+        }
+        throw new IllegalArgumentException("Unknown inference stage " + code);
+    }
+}
@@ -0,0 +1,87 @@
+package com.parkinsongui.inference;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Owns the warm Python worker. The worker is started on the first prediction,
+ * reused for every following one and restarted if the process has died. A worker whose
+ * reply could not be read to the end is stopped and replaced by the next call, as whatever
+ * it still sends would be taken for the next reply. {@link #shutdown} does not wait for a
+ * prediction in progress: it stops the process, and the prediction fails at once.
+ */
+public class InferenceWorkerManager {
+    // Enough tensor slots for one default-sized batch per round trip
+    private static final int RING_SLOTS = 32;
+
+    private final int intraOpThreads;
+    // Written under the lock, read by shutdown() without it
+    private volatile PythonWorker worker;
+    private volatile boolean shutDown;
+
+    public InferenceWorkerManager(int intraOpThreads) {
+        this.intraOpThreads = intraOpThreads;
+    }
+
+    public List<BatchPrediction> predictImages(List<String> imagePaths, ProgressListener listener) throws IOException {
+        return call(worker -> worker.predictImages(imagePaths, listener), listener);
+    }
+
+    private synchronized <T> T call(WorkerCall<T> request, ProgressListener listener) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            if (shutDown) {
+                throw new IOException("Inference is shutting down");
+            }
+            PythonWorker current = obtainWorker(listener);
+            try {
+                return request.call(current);
+            } catch (WorkerProtocol.PredictionFailedException e) {
+                // A complete reply, so the worker is still fit for the next request
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                // Only a crash is worth a retry; a hung or confused worker would likely do it again
+                boolean crashed = !current.isAlive() && !current.hasTimedOut() && !shutDown;
+                current.close();
+                worker = null;
+                if (!crashed || attempt > 1) {
+                    System.err.println("Discarding inference worker: " + e.getMessage());
+                    throw e;
+                }
+                System.err.println("Inference worker died, restarting: " + e.getMessage());
+            }
+        }
+    }
+
+    private PythonWorker obtainWorker(ProgressListener listener) throws IOException {
+        if (worker == null || !worker.isAlive()) {
+            if (worker != null) {
+                System.err.println("Inference worker is not running, starting a new one");
+                worker.close();
+            }
+            worker = new PythonWorker(intraOpThreads, RING_SLOTS, listener);
+            // Started while shutdown() looked for a worker to stop
+            if (shutDown) {
+                worker.close();
+                worker = null;
+                throw new IOException("Inference is shutting down");
+            }
+        }
+        return worker;
+    }
+
+    /**
+     * Stops the worker without taking the lock a running prediction holds, so it can be called
+     * from the FX thread while one is in progress.
+     */
+    public void shutdown() {
+        shutDown = true;
+        PythonWorker current = worker;
+        if (current != null) {
+            current.kill();
+        }
+    }
+
+    private interface WorkerCall<T> {
+        T call(PythonWorker worker) throws IOException;
+    }
+}
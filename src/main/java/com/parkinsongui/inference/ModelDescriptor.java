@@ -0,0 +1,80 @@
+package com.parkinsongui.inference;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Static facts about a model version. Size and hash come from the file itself; layer and
+ * parameter counts need the loaded model, so detection.py writes them once per version into
+ * a "&lt;model&gt;.meta" properties file (ensure_model_metadata) and they are read from there.
+ * An ONNX model without that file is described from its own graph ({@link OnnxGraph}), with
+ * operators counted as layers. Otherwise counts are -1 until the file exists for the current
+ * version.
+ */
+public record ModelDescriptor(Path path, long sizeBytes, long lastModified, String sha256,
+                              int layers, long parameters) {
+    public static final String METADATA_SUFFIX = ".meta";
+    private static final Map<Path, ModelDescriptor> KNOWN = new ConcurrentHashMap<>();
+
+    public static ModelDescriptor of(Path modelPath) throws IOException {
+        ModelFingerprint fingerprint = ModelFingerprint.of(modelPath);
+
+        ModelDescriptor known = KNOWN.get(fingerprint.path());
+        if (known != null && known.sha256.equals(fingerprint.sha256())) {
+            return known;
+        }
+
+        int layers = -1;
+        long parameters = -1;
+        Properties metadata = readMetadata(fingerprint.path().resolveSibling(fingerprint.path().getFileName() + METADATA_SUFFIX));
+        // A sidecar left over from an older model must not describe the new one
+        if (metadata != null && fingerprint.sha256().equals(metadata.getProperty("sha256"))) {
+            try {
+                layers = Integer.parseInt(metadata.getProperty("layers"));
+                parameters = Long.parseLong(metadata.getProperty("parameters"));
+            } catch (NumberFormatException e) {
+                System.err.println("Malformed model metadata for " + fingerprint.path() + ": " + e.getMessage());
+            }
+        } else if (fingerprint.path().getFileName().toString().endsWith(".onnx")) {
+            try {
+                OnnxGraph.Counts counts = OnnxGraph.count(fingerprint.path());
+                layers = counts.nodes();
+                parameters = counts.parameters();
+            } catch (IOException e) {
+                System.err.println("Could not read the graph of " + fingerprint.path() + ": " + e.getMessage());
+            }
+        }
+
+        ModelDescriptor descriptor = new ModelDescriptor(fingerprint.path(), fingerprint.size(),
+                fingerprint.lastModified(), fingerprint.sha256(), layers, parameters);
+        // Keep asking until the worker has written the metadata for this version
+        if (descriptor.hasArchitecture()) {
+            KNOWN.put(fingerprint.path(), descriptor);
+        }
+        return descriptor;
+    }
+
+    private static Properties readMetadata(Path metadataFile) throws IOException {
+        if (!Files.exists(metadataFile)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(metadataFile)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    public float sizeMb() {
+        return sizeBytes / (1024f * 1024f);
+    }
+
+    public boolean hasArchitecture() {
+        return layers >= 0 && parameters >= 0;
+    }
+}
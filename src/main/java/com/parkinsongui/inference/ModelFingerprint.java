@@ -0,0 +1,52 @@
+package com.parkinsongui.inference;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SHA-256 of a model file. The hash is only recomputed when the file's size or
+ * modification time changes, so checking it on every prediction costs one stat call.
+ */
+public record ModelFingerprint(Path path, long size, long lastModified, String sha256) {
+    private static final Map<Path, ModelFingerprint> KNOWN = new ConcurrentHashMap<>();
+
+    public static ModelFingerprint of(Path modelPath) throws IOException {
+        Path path = modelPath.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        ModelFingerprint known = KNOWN.get(path);
+        if (known != null && known.size == size && known.lastModified == lastModified) {
+            return known;
+        }
+        ModelFingerprint fingerprint = new ModelFingerprint(path, size, lastModified, sha256(path));
+        KNOWN.put(path, fingerprint);
+        return fingerprint;
+    }
+
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
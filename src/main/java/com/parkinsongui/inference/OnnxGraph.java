@@ -0,0 +1,127 @@
+package com.parkinsongui.inference;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Counts the nodes and the weights of an ONNX model straight from its protobuf encoding, for
+ * models exported without a ".meta" file. Only the graph's node and initializer fields are
+ * looked at; everything else, weight data included, is skipped over without being read.
+ *
+ * Nodes are ONNX operators, so the count is usually higher than the Keras model's layers.
+ */
+final class OnnxGraph {
+    // Field numbers from onnx.proto
+    private static final int MODEL_GRAPH = 7;
+    private static final int GRAPH_NODE = 1;
+    private static final int GRAPH_INITIALIZER = 5;
+    private static final int TENSOR_DIMS = 1;
+
+    private static final int VARINT = 0;
+    private static final int FIXED64 = 1;
+    private static final int LENGTH_DELIMITED = 2;
+    private static final int FIXED32 = 5;
+
+    record Counts(int nodes, long parameters) {
+    }
+
+    private final InputStream in;
+    private long position;
+
+    private OnnxGraph(InputStream in) {
+        this.in = in;
+    }
+
+    static Counts count(Path model) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(model), 64 * 1024)) {
+            OnnxGraph reader = new OnnxGraph(in);
+            long size = Files.size(model);
+            while (reader.position < size) {
+                long tag = reader.varint();
+                if (tag == (MODEL_GRAPH << 3 | LENGTH_DELIMITED)) {
+                    long length = reader.varint();
+                    return reader.graph(reader.position + length);
+                }
+                reader.skip(tag);
+            }
+            throw new IOException("No graph in " + model.getFileName());
+        }
+    }
+
+    private Counts graph(long end) throws IOException {
+        int nodes = 0;
+        long parameters = 0;
+        while (position < end) {
+            long tag = varint();
+            if (tag == (GRAPH_NODE << 3 | LENGTH_DELIMITED)) {
+                nodes++;
+                skipBytes(varint());
+            } else if (tag == (GRAPH_INITIALIZER << 3 | LENGTH_DELIMITED)) {
+                long length = varint();
+                parameters += elements(position + length);
+            } else {
+                skip(tag);
+            }
+        }
+        return new Counts(nodes, parameters);
+    }
+
+    // Product of a tensor's dims; a scalar has none and holds one value
+    private long elements(long end) throws IOException {
+        long elements = 1;
+        while (position < end) {
+            long tag = varint();
+            if (tag == (TENSOR_DIMS << 3 | VARINT)) {
+                elements *= varint();
+            } else if (tag == (TENSOR_DIMS << 3 | LENGTH_DELIMITED)) {
+                long length = varint();
+                long packedEnd = position + length;
+                while (position < packedEnd) {
+                    elements *= varint();
+                }
+            } else {
+                skip(tag);
+            }
+        }
+        return elements;
+    }
+
+    private void skip(long tag) throws IOException {
+        switch ((int) (tag & 7)) {
+            case VARINT -> varint();
+            case FIXED64 -> skipBytes(8);
+            case LENGTH_DELIMITED -> skipBytes(varint());
+            case FIXED32 -> skipBytes(4);
+            default -> throw new IOException("Not an ONNX model: wire type " + (tag & 7) + " at byte " + position);
+        }
+    }
+
+    private long varint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("ONNX model ends early");
+            }
+            position++;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Not an ONNX model: varint too long at byte " + position);
+    }
+
+    private void skipBytes(long count) throws IOException {
+        try {
+            in.skipNBytes(count);
+        } catch (EOFException e) {
+            throw new EOFException("ONNX model ends early");
+        }
+        position += count;
+    }
+}
@@ -0,0 +1,193 @@
+package com.parkinsongui.inference;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the ONNX export of best_model.h5 (see python/export_onnx.py) on the CPU inside the JVM,
+ * so no Python process or venv is needed.
+ */
+public class OnnxInferenceEngine implements InferenceEngine {
+    public static final String MODEL_PATH = "python/models/best_model.onnx";
+    private static final int INPUT_SIZE = ImagePreprocessor.INPUT_SIZE;
+    private static final int TENSOR_LENGTH = ImagePreprocessor.TENSOR_LENGTH;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "onnx-inference");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private OrtEnvironment environment;
+    private OrtSession session;
+    private String inputName;
+
+    @Override
+    public String getName() {
+        return "onnx";
+    }
+
+    @Override
+    public Path getModelPath() {
+        return Paths.get(MODEL_PATH);
+    }
+
+    @Override
+    public CompletableFuture<PredictionResult> predict(String imagePath, ProgressListener listener) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return runPrediction(imagePath, listener);
+            } catch (IOException | OrtException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<List<BatchPrediction>> predictBatch(List<String> imagePaths) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return runBatch(imagePaths);
+            } catch (IOException | OrtException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private PredictionResult runPrediction(String imagePath, ProgressListener listener) throws IOException, OrtException {
+        if (session == null) {
+            listener.onStage(InferenceStage.MODEL_LOADING);
+            ensureSession();
+        }
+
+        listener.onStage(InferenceStage.DECODING);
+        BufferedImage image = ImagePreprocessor.readReduced(new File(imagePath));
+        listener.onStage(InferenceStage.PREPROCESSING);
+        FloatBuffer input = FloatBuffer.allocate(TENSOR_LENGTH);
+        ImagePreprocessor.toTensor(image, input);
+        input.flip();
+
+        listener.onStage(InferenceStage.PREDICTING);
+        long start = System.nanoTime();
+        float[] probabilities = infer(input, 1);
+        float inferenceTime = (System.nanoTime() - start) / 1_000_000f;
+
+        listener.onStage(InferenceStage.DONE);
+        return toPrediction(probabilities[0], inferenceTime);
+    }
+
+    private List<BatchPrediction> runBatch(List<String> imagePaths) throws IOException, OrtException {
+        ensureSession();
+
+        // Decode and resize in parallel, then feed every loadable image to one session run
+        List<LoadedImage> loaded = imagePaths.parallelStream().map(path -> {
+            try {
+                return new LoadedImage(toTensor(path), null);
+            } catch (IOException e) {
+                return new LoadedImage(null, e.getMessage());
+            }
+        }).toList();
+
+        int count = (int) loaded.stream().filter(image -> image.tensor() != null).count();
+        float[] probabilities = new float[0];
+        float perImageTime = 0;
+        if (count > 0) {
+            FloatBuffer input = FloatBuffer.allocate(count * TENSOR_LENGTH);
+            for (LoadedImage image : loaded) {
+                if (image.tensor() != null) {
+                    input.put(image.tensor());
+                }
+            }
+            input.flip();
+
+            long start = System.nanoTime();
+            probabilities = infer(input, count);
+            perImageTime = (System.nanoTime() - start) / 1_000_000f / count;
+        }
+
+        List<BatchPrediction> predictions = new ArrayList<>(imagePaths.size());
+        int index = 0;
+        for (int i = 0; i < loaded.size(); i++) {
+            LoadedImage image = loaded.get(i);
+            if (image.tensor() == null) {
+                predictions.add(new BatchPrediction(imagePaths.get(i), null, image.error()));
+            } else {
+                predictions.add(new BatchPrediction(imagePaths.get(i), toPrediction(probabilities[index++], perImageTime), null));
+            }
+        }
+        return predictions;
+    }
+
+    private float[] infer(FloatBuffer input, int count) throws OrtException {
+        long[] shape = {count, INPUT_SIZE, INPUT_SIZE, 3};
+        try (OnnxTensor tensor = OnnxTensor.createTensor(environment, input, shape);
+             OrtSession.Result output = session.run(Map.of(inputName, tensor))) {
+            float[][] values = (float[][]) output.get(0).getValue();
+            float[] probabilities = new float[count];
+            for (int i = 0; i < count; i++) {
+                probabilities[i] = values[i][0];
+            }
+            return probabilities;
+        }
+    }
+
+    private PredictionResult toPrediction(float probability, float inferenceTime) {
+        return PredictionResult.fromProbability(probability, inferenceTime);
+    }
+
+    private void ensureSession() throws IOException, OrtException {
+        if (session != null) {
+            return;
+        }
+        File modelFile = new File(MODEL_PATH);
+        if (!modelFile.exists()) {
+            throw new IOException("ONNX model not found at " + modelFile.getAbsolutePath()
+                    + " (run python/export_onnx.py first)");
+        }
+
+        environment = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            options.setIntraOpNumThreads(Runtime.getRuntime().availableProcessors());
+            session = environment.createSession(modelFile.getPath(), options);
+        }
+        inputName = session.getInputNames().iterator().next();
+
+        System.out.println("ONNX session ready: " + modelFile.getPath());
+    }
+
+    private static FloatBuffer toTensor(String imagePath) throws IOException {
+        return ImagePreprocessor.preprocess(new File(imagePath));
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdownNow();
+        if (session != null) {
+            try {
+                session.close();
+            } catch (OrtException e) {
+                System.err.println("Error closing ONNX session: " + e.getMessage());
+            }
+        }
+    }
+
+    private record LoadedImage(FloatBuffer tensor, String error) {
+    }
+}
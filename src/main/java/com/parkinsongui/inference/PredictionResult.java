@@ -0,0 +1,23 @@
+package com.parkinsongui.inference;
+
+/**
+ * The outcome for one image. Details about the model itself live in {@link ModelDescriptor}.
+ */
+public record PredictionResult(String result, float confidenceScore, double probabilityScore, float inferenceTime) {
+
+    /**
+     * Applies the same 0.5 threshold as classify() in detection.py to a raw sigmoid output.
+     */
+    public static PredictionResult fromProbability(float probability, float inferenceTime) {
+        String result;
+        float confidence;
+        if (probability > 0.5f) {
+            result = "Parkinson's Disease";
+            confidence = probability * 100;
+        } else {
+            result = "Healthy";
+            confidence = (1 - probability) * 100;
+        }
+        return new PredictionResult(result, confidence, probability, inferenceTime);
+    }
+}
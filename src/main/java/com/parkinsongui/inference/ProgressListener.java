@@ -0,0 +1,13 @@
+package com.parkinsongui.inference;
+
+/**
+ * Told when a prediction enters a new stage. Called on inference threads, not the FX thread.
+ * For batches a stage can be reported more than once.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+    ProgressListener NONE = stage -> {
+    };
+
+    void onStage(InferenceStage stage);
+}
@@ -0,0 +1,40 @@
+package com.parkinsongui.inference;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs predictions in the pooled detection.py workers, the same TensorFlow path as always.
+ */
+public class PythonInferenceEngine implements InferenceEngine {
+    public static final String MODEL_PATH = "python/models/best_model.h5";
+
+    private final InferenceScheduler scheduler = new InferenceScheduler();
+
+    @Override
+    public String getName() {
+        return "python";
+    }
+
+    @Override
+    public Path getModelPath() {
+        return Paths.get(MODEL_PATH);
+    }
+
+    @Override
+    public CompletableFuture<PredictionResult> predict(String imagePath, ProgressListener listener) {
+        return scheduler.submit(imagePath, listener);
+    }
+
+    @Override
+    public CompletableFuture<List<BatchPrediction>> predictBatch(List<String> imagePaths) {
+        return scheduler.submitBatch(imagePaths);
+    }
+
+    @Override
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+}
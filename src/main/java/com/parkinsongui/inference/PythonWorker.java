@@ -0,0 +1,262 @@
+package com.parkinsongui.inference;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * A single long-lived "detection.py --worker" process. The model is loaded once
+ * when the process starts; every request after that only pays for the prediction.
+ * Tensors travel through a shared {@link TensorRing}; stdin/stdout carry {@link WorkerProtocol}
+ * frames and stderr is drained on its own thread so log output can never corrupt a reply.
+ * A worker that takes longer than -Dparkinson.worker.timeoutSeconds (default 300, enough for
+ * a cold TensorFlow import) to start or to answer a request is killed, so no caller waits on
+ * it forever.
+ */
+public class PythonWorker {
+    public static final String TIMEOUT_PROPERTY = "parkinson.worker.timeoutSeconds";
+
+    private static final String PYTHON_EXECUTABLE = "venv/bin/python";
+    private static final String SCRIPT = "detection.py";
+    private static final File WORKING_DIRECTORY = new File("python");
+
+    private static final long TIMEOUT_SECONDS = Math.max(1, Long.getLong(TIMEOUT_PROPERTY, 300));
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "inference-worker-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Kept for error messages when the worker dies
+    private static final int STDERR_TAIL_LINES = 20;
+
+    private final Process process;
+    private final WorkerProtocol protocol;
+    private final TensorRing ring;
+    private final Deque<String> stderrTail = new ArrayDeque<>();
+    private volatile boolean timedOut;
+
+    public PythonWorker(int intraOpThreads, int ringSlots, ProgressListener listener) throws IOException {
+        ring = new TensorRing(ringSlots);
+
+        ProcessBuilder pb = new ProcessBuilder(PYTHON_EXECUTABLE, SCRIPT, "--worker",
+                "--ring", ring.getPath().toAbsolutePath().toString());
+        pb.directory(WORKING_DIRECTORY);
+        pb.environment().put("PARKINSON_INTRA_OP_THREADS", String.valueOf(intraOpThreads));
+        pb.redirectError(ProcessBuilder.Redirect.PIPE);
+        listener.onStage(InferenceStage.WORKER_STARTING);
+        try {
+            process = pb.start();
+        } catch (IOException e) {
+            ring.close();
+            throw e;
+        }
+
+        protocol = new WorkerProtocol(process.getInputStream(), process.getOutputStream());
+        startStderrDrain();
+
+        try {
+            awaited(() -> {
+                awaitHello(listener);
+                return null;
+            });
+        } catch (IOException e) {
+            close();
+            throw new IOException(e.getMessage() + describeStderr(), e);
+        }
+    }
+
+    private void startStderrDrain() {
+        Thread drain = new Thread(() -> {
+            try (BufferedReader stderr = new BufferedReader(
+                    new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = stderr.readLine()) != null) {
+                    System.err.println("[worker " + process.pid() + "] " + line);
+                    synchronized (stderrTail) {
+                        if (stderrTail.size() == STDERR_TAIL_LINES) {
+                            stderrTail.removeFirst();
+                        }
+                        stderrTail.addLast(line);
+                    }
+                }
+            } catch (IOException ignored) {
+                // Pipe closed with the process
+            }
+        }, "inference-worker-stderr-" + process.pid());
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    private String describeStderr() {
+        synchronized (stderrTail) {
+            return stderrTail.isEmpty() ? "" : " (worker stderr: " + stderrTail.getLast() + ")";
+        }
+    }
+
+    private void awaitHello(ProgressListener listener) throws IOException {
+        while (true) {
+            int type = protocol.next();
+            if (type == WorkerProtocol.STAGE) {
+                listener.onStage(protocol.readStage());
+            } else if (type == WorkerProtocol.HELLO) {
+                int version = protocol.readUnsignedShort();
+                if (version != WorkerProtocol.VERSION) {
+                    throw new IOException("Inference worker speaks protocol " + version
+                            + ", expected " + WorkerProtocol.VERSION);
+                }
+                System.out.println("Inference worker ready (pid " + process.pid() + ")");
+                return;
+            } else {
+                throw new IOException("Unexpected message " + type + " during worker startup");
+            }
+        }
+    }
+
+    /**
+     * Runs a blocking exchange with the worker, killing the process if it takes longer than
+     * the timeout; the exchange then fails on the closed pipe.
+     */
+    private <T> T awaited(Read<T> read) throws IOException {
+        ScheduledFuture<?> timeout = WATCHDOG.schedule(() -> {
+            timedOut = true;
+            System.err.println("Inference worker " + process.pid() + " did not answer within "
+                    + TIMEOUT_SECONDS + " s, stopping it");
+            // Children would keep stdout open and the read blocked
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        try {
+            return read.read();
+        } catch (IOException e) {
+            if (timedOut) {
+                throw new IOException("Inference worker did not answer within " + TIMEOUT_SECONDS + " s", e);
+            }
+            throw e;
+        } finally {
+            timeout.cancel(false);
+        }
+    }
+
+    private interface Read<T> {
+        T read() throws IOException;
+    }
+
+    /**
+     * Preprocesses the images in parallel straight into ring slots and predicts each group of
+     * slots with one model call. Images ImageIO cannot decode go through the worker's own loader.
+     */
+    public synchronized List<BatchPrediction> predictImages(List<String> imagePaths, ProgressListener listener)
+            throws IOException {
+        List<BatchPrediction> predictions = new ArrayList<>(imagePaths.size());
+        for (int offset = 0; offset < imagePaths.size(); offset += ring.capacity()) {
+            List<String> chunk = imagePaths.subList(offset, Math.min(offset + ring.capacity(), imagePaths.size()));
+            predictions.addAll(predictChunk(chunk, listener));
+        }
+        listener.onStage(InferenceStage.DONE);
+        return predictions;
+    }
+
+    private List<BatchPrediction> predictChunk(List<String> imagePaths, ProgressListener listener) throws IOException {
+        int count = imagePaths.size();
+        int start = ring.allocate(count);
+
+        String[] errors = new String[count];
+        // Each image is decoded and preprocessed in one step, so both stages are reported up front
+        listener.onStage(InferenceStage.DECODING);
+        listener.onStage(InferenceStage.PREPROCESSING);
+        IntStream.range(0, count).parallel().forEach(i -> {
+            try {
+                BufferedImage image = ImagePreprocessor.readReduced(new File(imagePaths.get(i)));
+                ImagePreprocessor.toTensor(image, ring.tensorSlot(start + i));
+            } catch (IOException | RuntimeException e) {
+                errors[i] = e.getMessage() == null ? e.toString() : e.getMessage();
+            }
+        });
+
+        List<String> fallback = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (errors[i] != null) {
+                fallback.add(imagePaths.get(i));
+            }
+        }
+
+        // Undecodable slots hold stale data; they are predicted along with the rest and ignored
+        List<PredictionResult> results = fallback.size() == count ? List.of() : runSlots(start, count, listener);
+        List<BatchPrediction> fallbackResults = fallback.isEmpty() ? List.of() : predictBatch(fallback, listener);
+
+        List<BatchPrediction> predictions = new ArrayList<>(count);
+        int fallbackIndex = 0;
+        for (int i = 0; i < count; i++) {
+            if (errors[i] == null) {
+                predictions.add(new BatchPrediction(imagePaths.get(i), results.get(i), null));
+            } else {
+                predictions.add(fallbackResults.get(fallbackIndex++));
+            }
+        }
+        return predictions;
+    }
+
+    private List<PredictionResult> runSlots(int start, int count, ProgressListener listener) throws IOException {
+        awaited(() -> {
+            protocol.sendRun(start, count);
+            return protocol.readReply(List.of(), listener);
+        });
+
+        List<PredictionResult> results = new ArrayList<>(count);
+        for (int slot = start; slot < start + count; slot++) {
+            results.add(PredictionResult.fromProbability(ring.probability(slot), ring.inferenceTime(slot)));
+        }
+        return results;
+    }
+
+    /**
+     * Lets the worker open and preprocess the files itself. Only used for formats ImageIO cannot read.
+     */
+    private List<BatchPrediction> predictBatch(List<String> imagePaths, ProgressListener listener) throws IOException {
+        return awaited(() -> {
+            protocol.sendBatch(imagePaths);
+            return protocol.readReply(imagePaths, listener);
+        });
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Whether the worker was stopped for not answering, rather than dying on its own.
+     */
+    public boolean hasTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Stops the process without a word to it and removes the ring. Safe to call while another
+     * thread is waiting for a reply; that wait then fails on the closed pipe.
+     */
+    public void kill() {
+        process.descendants().forEach(ProcessHandle::destroy);
+        process.destroy();
+        ring.close();
+    }
+
+    public void close() {
+        try {
+            protocol.sendQuit();
+        } catch (IOException ignored) {
+            // Worker already gone, nothing to tell it
+        }
+        process.destroy();
+        ring.close();
+    }
+}
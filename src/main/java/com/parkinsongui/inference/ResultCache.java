@@ -0,0 +1,202 @@
+package com.parkinsongui.inference;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Prediction results keyed by SHA-256 of the image bytes plus the model fingerprint.
+ * Recent results live in a bounded LRU map; every result is also appended to an index
+ * file on disk, of which only the byte offsets are kept in memory. Entries written for
+ * another model version are dropped (and the file compacted) when the cache is opened,
+ * and can never match afterwards because the fingerprint is part of the key.
+ */
+public class ResultCache {
+    private static final int DEFAULT_MEMORY_ENTRIES = 256;
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final int FIELD_COUNT = 6;
+    private static final int MAX_LINE_BYTES = 1024;
+
+    private final Path indexFile;
+    private final String modelHash;
+    private final Map<String, PredictionResult> memory;
+    private final Map<String, Long> diskOffsets = new HashMap<>();
+    private RandomAccessFile index;
+
+    public ResultCache(Path indexFile, String modelHash) {
+        this(indexFile, modelHash, DEFAULT_MEMORY_ENTRIES);
+    }
+
+    public ResultCache(Path indexFile, String modelHash, int memoryEntries) {
+        this.indexFile = indexFile;
+        this.modelHash = modelHash;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PredictionResult> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+        try {
+            open();
+        } catch (IOException e) {
+            System.err.println("Result cache disabled on disk: " + e.getMessage());
+            index = null;
+        }
+    }
+
+    public static String imageKey(Path image) throws IOException {
+        return ModelFingerprint.sha256(image);
+    }
+
+    public synchronized PredictionResult get(String imageHash) {
+        PredictionResult cached = memory.get(imageHash);
+        if (cached != null || index == null) {
+            return cached;
+        }
+        Long offset = diskOffsets.get(imageHash);
+        if (offset == null) {
+            return null;
+        }
+        try {
+            cached = parse(readLineAt(offset).split(FIELD_SEPARATOR));
+        } catch (IOException e) {
+            System.err.println("Result cache read failed: " + e.getMessage());
+            return null;
+        }
+        if (cached != null) {
+            memory.put(imageHash, cached);
+        }
+        return cached;
+    }
+
+    public synchronized void put(String imageHash, PredictionResult result) {
+        memory.put(imageHash, result);
+        if (index == null) {
+            return;
+        }
+        try {
+            long offset = index.length();
+            index.seek(offset);
+            index.write((format(imageHash, result) + "\n").getBytes(StandardCharsets.UTF_8));
+            diskOffsets.put(imageHash, offset);
+        } catch (IOException e) {
+            System.err.println("Result cache write failed: " + e.getMessage());
+        }
+    }
+
+    public String getModelHash() {
+        return modelHash;
+    }
+
+    public synchronized void close() {
+        if (index != null) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                System.err.println("Error closing result cache: " + e.getMessage());
+            }
+            index = null;
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(indexFile.toAbsolutePath().getParent());
+        if (Files.exists(indexFile)) {
+            compactForCurrentModel();
+        }
+        index = new RandomAccessFile(indexFile.toFile(), "rw");
+
+        // Only remember where each key's line starts; the line is read again on a memory miss
+        long offset = 0;
+        long lineStart = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(indexFile))) {
+            ByteArrayOutputStream key = new ByteArrayOutputStream(64);
+            boolean inKey = true;
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b == '\n') {
+                    diskOffsets.put(key.toString(StandardCharsets.UTF_8), lineStart);
+                    key.reset();
+                    inKey = true;
+                    lineStart = offset;
+                } else if (b == '\t') {
+                    inKey = false;
+                } else if (inKey) {
+                    key.write(b);
+                }
+            }
+        }
+        if (offset != lineStart) {
+            // Half-written last line from a crash; drop it so the next append starts cleanly
+            index.setLength(lineStart);
+        }
+        System.out.println("Result cache: " + diskOffsets.size() + " entries for model " + modelHash.substring(0, 12));
+    }
+
+    // Rewrites the index keeping only lines produced by the current model
+    private void compactForCurrentModel() throws IOException {
+        List<String> lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+        List<String> current = lines.stream()
+                .filter(line -> {
+                    String[] fields = line.split(FIELD_SEPARATOR);
+                    return fields.length == FIELD_COUNT && modelHash.equals(fields[1]);
+                })
+                .toList();
+        if (current.size() == lines.size()) {
+            return;
+        }
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        Files.write(temp, current, StandardCharsets.UTF_8);
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("Result cache: dropped " + (lines.size() - current.size()) + " stale entries");
+    }
+
+    private String format(String imageHash, PredictionResult result) {
+        return String.join(FIELD_SEPARATOR,
+                imageHash,
+                modelHash,
+                result.result(),
+                String.format(Locale.ROOT, "%.4f", result.confidenceScore()),
+                String.format(Locale.ROOT, "%.6f", result.probabilityScore()),
+                String.format(Locale.ROOT, "%.3f", result.inferenceTime()));
+    }
+
+    private PredictionResult parse(String[] fields) {
+        if (fields.length != FIELD_COUNT || !modelHash.equals(fields[1])) {
+            return null;
+        }
+        try {
+            return new PredictionResult(
+                    fields[2],
+                    Float.parseFloat(fields[3]),
+                    Double.parseDouble(fields[4]),
+                    Float.parseFloat(fields[5]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // RandomAccessFile.readLine() is Latin-1 only and reads byte by byte
+    private String readLineAt(long offset) throws IOException {
+        byte[] buffer = new byte[MAX_LINE_BYTES];
+        index.seek(offset);
+        int length = index.read(buffer);
+        int end = 0;
+        while (end < length && buffer[end] != '\n') {
+            end++;
+        }
+        return new String(buffer, 0, Math.max(end, 0), StandardCharsets.UTF_8);
+    }
+}
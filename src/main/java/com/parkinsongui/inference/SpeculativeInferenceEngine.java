@@ -0,0 +1,150 @@
+package com.parkinsongui.inference;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs analyses ahead of time for images that are likely to be asked for next, such as
+ * fresh phone uploads. A later {@link #predict} for the same image picks up the finished
+ * result, or joins the run still in progress, instead of starting over. Results also pass
+ * through the wrapped engine's cache, so they survive a restart.
+ *
+ * At most {@value #MAX_WAITING} speculations are kept; beyond that the oldest finished ones
+ * are dropped, which only costs a cache lookup if they are asked for after all. Those dropped,
+ * those nobody asks for before shutdown and those that fail are counted as discarded.
+ */
+public class SpeculativeInferenceEngine implements InferenceEngine {
+    public static final String ENABLED_PROPERTY = "parkinson.autoAnalyze";
+    private static final int MAX_WAITING = 64;
+
+    private final InferenceEngine delegate;
+    // Oldest first; guarded by itself
+    private final Map<Path, CompletableFuture<PredictionResult>> speculations = new LinkedHashMap<>();
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger used = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger discarded = new AtomicInteger();
+
+    public SpeculativeInferenceEngine(InferenceEngine delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Starts analysing the image in the background unless that is already under way.
+     */
+    public void speculate(String imagePath) {
+        Path key = key(imagePath);
+        CompletableFuture<PredictionResult> speculation = new CompletableFuture<>();
+        synchronized (speculations) {
+            if (speculations.putIfAbsent(key, speculation) != null) {
+                return;
+            }
+            dropOldest();
+        }
+        started.incrementAndGet();
+        delegate.predict(imagePath).whenComplete((result, error) -> {
+            if (error == null) {
+                speculation.complete(result);
+                return;
+            }
+            boolean unclaimed;
+            synchronized (speculations) {
+                unclaimed = speculations.remove(key, speculation);
+            }
+            if (unclaimed) {
+                // Nobody was waiting for it yet; a later request simply runs again
+                failed.incrementAndGet();
+                System.err.println("Speculative analysis of " + imagePath + " failed: " + error.getMessage());
+            }
+            speculation.completeExceptionally(error);
+        });
+    }
+
+    // Running speculations stay, as dropping one would only start the same analysis again
+    private void dropOldest() {
+        Iterator<CompletableFuture<PredictionResult>> oldest = speculations.values().iterator();
+        while (speculations.size() > MAX_WAITING && oldest.hasNext()) {
+            if (oldest.next().isDone()) {
+                oldest.remove();
+                discarded.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<PredictionResult> predict(String imagePath, ProgressListener listener) {
+        CompletableFuture<PredictionResult> speculation;
+        synchronized (speculations) {
+            speculation = speculations.remove(key(imagePath));
+        }
+        if (speculation == null) {
+            return delegate.predict(imagePath, listener);
+        }
+        used.incrementAndGet();
+        if (!speculation.isDone()) {
+            listener.onStage(InferenceStage.PREDICTING);
+        }
+        return speculation.whenComplete((result, error) -> listener.onStage(InferenceStage.DONE));
+    }
+
+    public Stats stats() {
+        synchronized (speculations) {
+            return new Stats(started.get(), used.get(), speculations.size(), failed.get(), discarded.get());
+        }
+    }
+
+    private static Path key(String imagePath) {
+        return Paths.get(imagePath).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Path getModelPath() {
+        return delegate.getModelPath();
+    }
+
+    @Override
+    public ModelDescriptor describeModel() throws IOException {
+        return delegate.describeModel();
+    }
+
+    @Override
+    public CompletableFuture<List<BatchPrediction>> predictBatch(List<String> imagePaths) {
+        return delegate.predictBatch(imagePaths);
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (speculations) {
+            discarded.addAndGet(speculations.size());
+            speculations.clear();
+        }
+        if (started.get() > 0) {
+            System.out.println("Speculative analysis: " + stats());
+        }
+        delegate.shutdown();
+    }
+
+    /**
+     * waiting: finished or running speculations that nobody has asked for yet.
+     */
+    public record Stats(int started, int used, int waiting, int failed, int discarded) {
+
+        @Override
+        public String toString() {
+            return started + " run ahead, " + used + " used, " + waiting + " waiting, "
+                    + (failed + discarded) + " discarded";
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.parkinsongui.inference;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory-mapped file shared with one Python worker. Java preprocesses straight into tensor
+ * slots, the worker reads them in place with numpy.memmap and writes one result record per
+ * slot back. Only slot ranges and completion travel over the worker's stdin/stdout.
+ *
+ * Layout (little-endian): a 64 byte header (magic, version, slot count, floats per tensor),
+ * then slots * TENSOR_LENGTH float32 tensors, then slots * {probability, inference ms} float32.
+ * Keep in sync with TensorRing in detection.py.
+ *
+ * Java has no supported way to unmap a file; the mapping goes with the buffer once it is
+ * garbage collected. Windows refuses to delete a file that is still mapped, so there
+ * {@link #close} leaves the ring behind, and the next ring removes leftovers that are no
+ * longer mapped. That costs a few megabytes of temporary files until then.
+ */
+public class TensorRing implements AutoCloseable {
+    public static final int MAGIC = 0x524E4731; // "RNG1"
+    public static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int TENSOR_BYTES = ImagePreprocessor.TENSOR_LENGTH * Float.BYTES;
+    private static final int RESULT_FLOATS = 2;
+    private static final int RESULT_BYTES = RESULT_FLOATS * Float.BYTES;
+    private static final String PREFIX = "parkinson-ring-";
+    private static final String SUFFIX = ".bin";
+    // Old enough that the worker it was made for has long opened it
+    private static final long STALE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Path path;
+    private final int slots;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long resultsOffset;
+    private int cursor;
+    private boolean closed;
+
+    public TensorRing(int slots) throws IOException {
+        this.slots = slots;
+        Path directory = sharedMemoryDirectory();
+        removeLeftovers(directory);
+        this.path = Files.createTempFile(directory, PREFIX, SUFFIX);
+        this.resultsOffset = HEADER_BYTES + (long) slots * TENSOR_BYTES;
+        long size = resultsOffset + (long) slots * RESULT_BYTES;
+
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, slots);
+        buffer.putInt(12, ImagePreprocessor.TENSOR_LENGTH);
+    }
+
+    // /dev/shm keeps the ring in RAM on Linux; elsewhere the page cache does the same job
+    private static Path sharedMemoryDirectory() {
+        Path shm = Paths.get("/dev/shm");
+        if (Files.isDirectory(shm) && Files.isWritable(shm)) {
+            return shm;
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    // Rings an earlier close could not delete; one still mapped, here or elsewhere, stays on Windows
+    private static void removeLeftovers(Path directory) {
+        long cutoff = System.currentTimeMillis() - STALE_MILLIS;
+        try (DirectoryStream<Path> rings = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path ring : rings) {
+                try {
+                    if (Files.getLastModifiedTime(ring).toMillis() < cutoff) {
+                        Files.deleteIfExists(ring);
+                    }
+                } catch (IOException e) {
+                    // Still mapped; a later ring tries again
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not look for old tensor rings: " + e.getMessage());
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int capacity() {
+        return slots;
+    }
+
+    /**
+     * Reserves count contiguous slots and returns the first one. Ranges never wrap so the
+     * worker can hand a single slice to model.predict.
+     */
+    public int allocate(int count) {
+        if (count > slots) {
+            throw new IllegalArgumentException("Cannot allocate " + count + " of " + slots + " slots");
+        }
+        if (cursor + count > slots) {
+            cursor = 0;
+        }
+        int start = cursor;
+        cursor = (cursor + count) % slots;
+        return start;
+    }
+
+    /**
+     * A view over one slot's tensor; writes go straight into the shared mapping.
+     */
+    public FloatBuffer tensorSlot(int slot) {
+        return slice(HEADER_BYTES + (long) slot * TENSOR_BYTES, TENSOR_BYTES).asFloatBuffer();
+    }
+
+    public float probability(int slot) {
+        return buffer.getFloat((int) (resultsOffset + (long) slot * RESULT_BYTES));
+    }
+
+    public float inferenceTime(int slot) {
+        return buffer.getFloat((int) (resultsOffset + (long) slot * RESULT_BYTES + Float.BYTES));
+    }
+
+    private ByteBuffer slice(long offset, int length) {
+        return buffer.slice((int) offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Synchronized, as a worker may be killed from another thread while it is being closed
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Could not close tensor ring " + path + ": " + e.getMessage());
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Windows, while the buffer is still mapped; removed by a later ring
+            System.out.println("Tensor ring " + path.getFileName() + " left for a later start: " + e.getMessage());
+        }
+    }
+}
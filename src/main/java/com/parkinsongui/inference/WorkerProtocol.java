@@ -0,0 +1,226 @@
+package com.parkinsongui.inference;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Framing for the detection.py worker's stdin/stdout; keep in sync with worker_protocol.py.
+ * Each message is a big-endian u32 length, then a u8 type and its fields; strings are a u16
+ * byte count plus UTF-8. Incoming frames are read into one reused buffer, so parsing a reply
+ * allocates nothing beyond the strings it contains.
+ */
+class WorkerProtocol {
+    static final int VERSION = 2;
+
+    // Worker -> GUI
+    static final int HELLO = 1;
+    static final int STAGE = 2;
+    static final int RESULT = 3;
+    static final int ERROR = 4;
+    static final int DONE = 5;
+
+    // GUI -> worker
+    static final int PREDICT = 16;
+    static final int BATCH = 17;
+    static final int RUN = 18;
+    static final int QUIT = 19;
+
+    // Anything larger is not a frame, most likely stray text on stdout
+    private static final int MAX_FRAME_BYTES = 1 << 20;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private final DataInputStream in;
+    private final OutputStream out;
+    private ByteBuffer frame = ByteBuffer.allocate(256);
+
+    WorkerProtocol(InputStream in, OutputStream out) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.out = new BufferedOutputStream(out);
+    }
+
+    /**
+     * Reads the next frame and returns its type; its fields are then read with the read* methods.
+     */
+    int next() throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            throw new IOException("Inference worker terminated unexpectedly");
+        }
+        if (length < 1 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Inference worker sent an invalid frame (length " + length + ")");
+        }
+        if (frame.capacity() < length) {
+            frame = ByteBuffer.allocate(Math.max(length, frame.capacity() * 2));
+        }
+        frame.clear().limit(length);
+        in.readFully(frame.array(), 0, length);
+        return Byte.toUnsignedInt(frame.get());
+    }
+
+    /**
+     * Reads one reply up to DONE, pairing RESULT frames with the request's images in order.
+     * A failed request is still read to the end so the next reply starts on a frame boundary;
+     * only that case throws {@link PredictionFailedException}. Any other IOException means
+     * the stream can no longer be trusted to be on a frame boundary.
+     */
+    List<BatchPrediction> readReply(List<String> imagePaths, ProgressListener listener) throws IOException {
+        try {
+            return readFrames(imagePaths, listener);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw malformed(e);
+        }
+    }
+
+    private List<BatchPrediction> readFrames(List<String> imagePaths, ProgressListener listener) throws IOException {
+        List<BatchPrediction> predictions = new ArrayList<>(imagePaths.size());
+        String error = null;
+        while (true) {
+            int type = next();
+            switch (type) {
+                case STAGE -> listener.onStage(readStage());
+                case RESULT -> {
+                    if (predictions.size() == imagePaths.size()) {
+                        throw new IOException("Inference worker sent more results than images");
+                    }
+                    String imagePath = imagePaths.get(predictions.size());
+                    if (readUnsignedByte() == 0) {
+                        float probability = readFloat();
+                        float inferenceTime = readFloat();
+                        predictions.add(new BatchPrediction(imagePath,
+                                PredictionResult.fromProbability(probability, inferenceTime), null));
+                    } else {
+                        predictions.add(new BatchPrediction(imagePath, null, readString()));
+                    }
+                }
+                case ERROR -> error = readString();
+                case DONE -> {
+                    if (error != null) {
+                        throw new PredictionFailedException("Prediction failed: " + error);
+                    }
+                    if (predictions.size() != imagePaths.size()) {
+                        throw new IOException("Worker answered " + predictions.size() + " of "
+                                + imagePaths.size() + " images");
+                    }
+                    return predictions;
+                }
+                default -> throw new IOException("Unexpected message " + type + " from inference worker");
+            }
+        }
+    }
+
+    /**
+     * Reads a STAGE frame's field, turning an unknown code into an IOException like any other
+     * malformed frame.
+     */
+    InferenceStage readStage() throws IOException {
+        try {
+            return InferenceStage.fromCode(readUnsignedByte());
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw malformed(e);
+        }
+    }
+
+    private static IOException malformed(RuntimeException e) {
+        return new IOException("Inference worker sent a malformed frame: " + e, e);
+    }
+
+    int readUnsignedByte() {
+        return Byte.toUnsignedInt(frame.get());
+    }
+
+    int readUnsignedShort() {
+        return Short.toUnsignedInt(frame.getShort());
+    }
+
+    float readFloat() {
+        return frame.getFloat();
+    }
+
+    String readString() {
+        int length = readUnsignedShort();
+        String value = new String(frame.array(), frame.position(), length, StandardCharsets.UTF_8);
+        frame.position(frame.position() + length);
+        return value;
+    }
+
+    void sendBatch(List<String> imagePaths) throws IOException {
+        if (imagePaths.size() > 0xFFFF) {
+            throw new IllegalArgumentException("Too many images in one batch: " + imagePaths.size());
+        }
+        byte[][] paths = new byte[imagePaths.size()][];
+        int length = 2;
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = encode(imagePaths.get(i));
+            length += 2 + paths[i].length;
+        }
+        writeHeader(BATCH, length);
+        writeShort(paths.length);
+        for (byte[] path : paths) {
+            writeString(path);
+        }
+        out.flush();
+    }
+
+    void sendRun(int start, int count) throws IOException {
+        writeHeader(RUN, 8);
+        writeInt(start);
+        writeInt(count);
+        out.flush();
+    }
+
+    void sendQuit() throws IOException {
+        writeHeader(QUIT, 0);
+        out.flush();
+    }
+
+    /**
+     * The worker answered the whole request and reported it failed; it is still in step with us.
+     */
+    static class PredictionFailedException extends IOException {
+        PredictionFailedException(String message) {
+            super(message);
+        }
+    }
+
+    private static byte[] encode(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IOException("String too long for the worker protocol: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private void writeHeader(int type, int payloadLength) throws IOException {
+        writeInt(payloadLength + 1);
+        out.write(type);
+    }
+
+    private void writeString(byte[] bytes) throws IOException {
+        writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
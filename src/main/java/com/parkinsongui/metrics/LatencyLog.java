@@ -0,0 +1,200 @@
+package com.parkinsongui.metrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends one line per analysis to a log file and keeps the most recent runs in memory
+ * for percentile summaries. The file is rolled over to "&lt;name&gt;.1" once it grows past
+ * MAX_LOG_BYTES, and every SUMMARY_INTERVAL records a "# summary" line is written too.
+ *
+ * Record format: ISO instant, engine, total ms, then phase=ms pairs, tab separated.
+ */
+public class LatencyLog {
+    public static final String TOTAL = "total";
+
+    private static final long MAX_LOG_BYTES = 1024 * 1024;
+    private static final int WINDOW = 500;
+    private static final int SUMMARY_INTERVAL = 50;
+    private static final String SUMMARY_PREFIX = "# summary";
+
+    private final Path logFile;
+    private final Map<String, Deque<Long>> recent = new LinkedHashMap<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "latency-log");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int recordsSinceSummary;
+
+    public LatencyLog(Path logFile) {
+        this.logFile = logFile;
+        // Seed the window from earlier sessions so percentiles are meaningful from the first run
+        writer.execute(this::loadRecent);
+    }
+
+    /**
+     * Adds the trace to the in-memory window and queues the log write; returns the
+     * summary including this run. Cheap enough to call on the FX thread.
+     */
+    public Map<String, Summary> record(String engine, LatencyTrace trace) {
+        String line = format(engine, trace);
+        Map<String, Summary> summaries;
+        boolean writeSummary;
+        synchronized (this) {
+            add(TOTAL, trace.totalNanos());
+            for (LatencyTrace.Phase phase : trace.phases()) {
+                add(phase.name(), phase.nanos());
+            }
+            summaries = summarize();
+            writeSummary = ++recordsSinceSummary >= SUMMARY_INTERVAL;
+            if (writeSummary) {
+                recordsSinceSummary = 0;
+            }
+        }
+        String summaryLine = writeSummary ? formatSummary(summaries) : null;
+        writer.execute(() -> append(line, summaryLine));
+        return summaries;
+    }
+
+    private void add(String name, long nanos) {
+        Deque<Long> values = recent.computeIfAbsent(name, key -> new ArrayDeque<>());
+        if (values.size() == WINDOW) {
+            values.removeFirst();
+        }
+        values.addLast(nanos);
+    }
+
+    private Map<String, Summary> summarize() {
+        Map<String, Summary> summaries = new LinkedHashMap<>();
+        recent.forEach((name, values) -> summaries.put(name, Summary.of(values)));
+        return summaries;
+    }
+
+    private static String format(String engine, LatencyTrace trace) {
+        StringBuilder line = new StringBuilder()
+                .append(Instant.now()).append('\t')
+                .append(engine).append('\t')
+                .append(millis(trace.totalNanos()));
+        for (LatencyTrace.Phase phase : trace.phases()) {
+            line.append('\t').append(phase.name()).append('=').append(millis(phase.nanos()));
+        }
+        return line.toString();
+    }
+
+    private static String formatSummary(Map<String, Summary> summaries) {
+        StringBuilder line = new StringBuilder(SUMMARY_PREFIX).append('\t').append(Instant.now());
+        summaries.forEach((name, summary) -> line.append('\t').append(name).append('=')
+                .append(String.format(Locale.ROOT, "p50:%.1f,p95:%.1f,p99:%.1f,n:%d",
+                        summary.p50(), summary.p95(), summary.p99(), summary.count())));
+        return line.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1_000_000.0);
+    }
+
+    private void append(String line, String summaryLine) {
+        try {
+            Files.createDirectories(logFile.toAbsolutePath().getParent());
+            if (Files.exists(logFile) && Files.size(logFile) > MAX_LOG_BYTES) {
+                Files.move(logFile, logFile.resolveSibling(logFile.getFileName() + ".1"),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (Writer out = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write(line);
+                out.write('\n');
+                if (summaryLine != null) {
+                    out.write(summaryLine);
+                    out.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write latency log: " + e.getMessage());
+        }
+    }
+
+    private void loadRecent() {
+        if (!Files.exists(logFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(SUMMARY_PREFIX)) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 3) {
+                    continue;
+                }
+                try {
+                    synchronized (this) {
+                        add(TOTAL, toNanos(fields[2]));
+                        for (int i = 3; i < fields.length; i++) {
+                            int separator = fields[i].lastIndexOf('=');
+                            if (separator > 0) {
+                                add(fields[i].substring(0, separator), toNanos(fields[i].substring(separator + 1)));
+                            }
+                        }
+                    }
+                } catch (NumberFormatException ignored) {
+                    // Partial line from an interrupted write
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read latency log: " + e.getMessage());
+        }
+    }
+
+    private static long toNanos(String millis) {
+        return (long) (Double.parseDouble(millis) * 1_000_000);
+    }
+
+    public void close() {
+        writer.shutdown();
+        try {
+            // Let the last queued records reach the file before the JVM exits
+            writer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Nearest-rank percentiles in milliseconds.
+     */
+    public record Summary(int count, double p50, double p95, double p99) {
+
+        static Summary of(Deque<Long> values) {
+            long[] sorted = values.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            return new Summary(sorted.length, percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99));
+        }
+
+        private static double percentile(long[] sorted, int percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.parkinsongui.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Monotonic timeline of one analysis, from the click to the rendered result. Each
+ * {@link #mark} closes the phase that was running, so the phases add up to the total.
+ */
+public class LatencyTrace {
+    private final long start;
+    private final List<Phase> phases = new ArrayList<>();
+    private long last;
+
+    public LatencyTrace() {
+        this(System.nanoTime());
+    }
+
+    public LatencyTrace(long startNanos) {
+        this.start = startNanos;
+        this.last = startNanos;
+    }
+
+    public void mark(String phase) {
+        mark(phase, System.nanoTime());
+    }
+
+    /**
+     * Ends the current phase at the given System.nanoTime(); timestamps taken on another
+     * thread and handed over later keep their original ordering.
+     */
+    public synchronized void mark(String phase, long nanos) {
+        long end = Math.max(nanos, last);
+        phases.add(new Phase(phase, end - last));
+        last = end;
+    }
+
+    public synchronized List<Phase> phases() {
+        return List.copyOf(phases);
+    }
+
+    public synchronized long totalNanos() {
+        return last - start;
+    }
+
+    public record Phase(String name, long nanos) {
+
+        public double millis() {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
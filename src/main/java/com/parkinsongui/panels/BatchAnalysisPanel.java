@@ -0,0 +1,260 @@
+package com.parkinsongui.panels;
+
+import com.parkinsongui.App;
+import com.parkinsongui.inference.BatchPrediction;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.*;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public class BatchAnalysisPanel extends VBox {
+    private static final List<String> IMAGE_EXTENSIONS = List.of(".png", ".jpg", ".jpeg", ".bmp", ".gif");
+    private static final int DEFAULT_BATCH_SIZE = 32;
+
+    private App app;
+    private Button chooseFolderButton;
+    private Button startButton;
+    private Button goBackButton;
+    private Spinner<Integer> batchSizeSpinner;
+    private Label folderLabel;
+    private Label statusLabel;
+    private ProgressBar progressBar;
+    private TableView<BatchRow> resultsTable;
+
+    private final ObservableList<BatchRow> rows = FXCollections.observableArrayList();
+    private File selectedFolder;
+    private int totalImages;
+    private int finishedImages;
+    private int pendingBatches;
+    private long startTime;
+
+    public BatchAnalysisPanel(App app) {
+        this.app = app;
+        initializeComponents();
+        setupLayout();
+        setupEventHandlers();
+    }
+
+    private void initializeComponents() {
+        String buttonStyle = "-fx-pref-height: 38; -fx-font-size: 14px; -fx-font-weight: bold; " +
+                "-fx-border-radius: 8; -fx-background-radius: 8; -fx-text-fill: white; " +
+                "-fx-effect: dropshadow(three-pass-box, rgba(0,0,0,0.3), 5, 0, 0, 2);";
+
+        chooseFolderButton = new Button("Choose Folder");
+        chooseFolderButton.setStyle(buttonStyle +
+                "-fx-background-color: linear-gradient(to right, #4dabf7, #9775fa);");
+
+        startButton = new Button("Analyse Folder");
+        startButton.setDisable(true);
+        startButton.setStyle(buttonStyle +
+                "-fx-background-color: linear-gradient(to right, #28a745, #218838);");
+
+        goBackButton = new Button("Go Back");
+        goBackButton.setStyle(buttonStyle +
+                "-fx-background-color: linear-gradient(to right, #6c757d, #495057);");
+
+        batchSizeSpinner = new Spinner<>(1, 256, DEFAULT_BATCH_SIZE);
+        batchSizeSpinner.setEditable(true);
+        batchSizeSpinner.setPrefWidth(90);
+
+        folderLabel = new Label("No folder selected");
+        folderLabel.setStyle("-fx-font-size: 13px; -fx-text-fill: #adb5bd;");
+
+        statusLabel = new Label("");
+        statusLabel.setStyle("-fx-font-size: 13px; -fx-text-fill: #ced4da;");
+
+        progressBar = new ProgressBar(0);
+        progressBar.setPrefWidth(400);
+        progressBar.setVisible(false);
+
+        resultsTable = new TableView<>(rows);
+        resultsTable.setPlaceholder(new Label("Results appear here as each batch finishes"));
+        resultsTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+
+        TableColumn<BatchRow, String> fileColumn = new TableColumn<>("File");
+        fileColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().fileName()));
+
+        TableColumn<BatchRow, String> predictionColumn = new TableColumn<>("Prediction");
+        predictionColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().prediction()));
+
+        TableColumn<BatchRow, Number> confidenceColumn = new TableColumn<>("Confidence %");
+        confidenceColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().confidence()));
+
+        TableColumn<BatchRow, Number> probabilityColumn = new TableColumn<>("Probability");
+        probabilityColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().probability()));
+
+        resultsTable.getColumns().add(fileColumn);
+        resultsTable.getColumns().add(predictionColumn);
+        resultsTable.getColumns().add(confidenceColumn);
+        resultsTable.getColumns().add(probabilityColumn);
+        resultsTable.setRowFactory(table -> {
+            TableRow<BatchRow> row = new TableRow<>();
+            row.setOnMouseClicked(e -> {
+                if (e.getClickCount() == 2 && !row.isEmpty()) {
+                    app.showRunPanel(row.getItem().imagePath());
+                }
+            });
+            return row;
+        });
+    }
+
+    private void setupLayout() {
+        setAlignment(Pos.CENTER);
+        setSpacing(20);
+        setPadding(new Insets(20, 45, 20, 45));
+
+        VBox card = new VBox(18);
+        card.setAlignment(Pos.TOP_CENTER);
+        card.setPadding(new Insets(25));
+        card.setStyle(
+                "-fx-background-color: rgba(25, 25, 25, 1);" +
+                        "-fx-background-radius: 15;" +
+                        "-fx-border-radius: 15;" +
+                        "-fx-border-color: linear-gradient(to right, #6a11cb, #2575fc);" +
+                        "-fx-border-width: 2;" +
+                        "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.5), 15, 0, 0, 5);"
+        );
+
+        Label titleLabel = new Label("Folder Batch Analysis");
+        titleLabel.setStyle("-fx-font-size: 24px; -fx-font-weight: bold; -fx-text-fill: white;");
+
+        Label batchSizeLabel = new Label("Batch size");
+        batchSizeLabel.setStyle("-fx-font-size: 14px; -fx-text-fill: #e9ecef;");
+
+        HBox controls = new HBox(15, chooseFolderButton, batchSizeLabel, batchSizeSpinner, startButton);
+        controls.setAlignment(Pos.CENTER);
+
+        VBox.setVgrow(resultsTable, Priority.ALWAYS);
+        VBox.setVgrow(card, Priority.ALWAYS);
+
+        card.getChildren().addAll(titleLabel, controls, folderLabel, progressBar, statusLabel, resultsTable, goBackButton);
+        getChildren().add(card);
+    }
+
+    private void setupEventHandlers() {
+        chooseFolderButton.setOnAction(e -> chooseFolder());
+        startButton.setOnAction(e -> startAnalysis());
+        goBackButton.setOnAction(e -> app.showScanImagePanel());
+    }
+
+    private void chooseFolder() {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Select Folder of Images");
+        File folder = chooser.showDialog(app.getPrimaryStage());
+        if (folder != null) {
+            selectedFolder = folder;
+            folderLabel.setText(folder.getAbsolutePath());
+            startButton.setDisable(false);
+        }
+    }
+
+    private void startAnalysis() {
+        if (selectedFolder == null) {
+            return;
+        }
+
+        List<String> imagePaths = listImages(selectedFolder);
+        if (imagePaths.isEmpty()) {
+            statusLabel.setText("No images found in this folder");
+            return;
+        }
+
+        rows.clear();
+        totalImages = imagePaths.size();
+        finishedImages = 0;
+        startTime = System.nanoTime();
+        setRunning(true);
+        updateStatus();
+
+        // Each batch is one request; the engine spreads batches over its workers
+        int batchSize = batchSizeSpinner.getValue();
+        pendingBatches = (imagePaths.size() + batchSize - 1) / batchSize;
+        for (int start = 0; start < imagePaths.size(); start += batchSize) {
+            List<String> batch = imagePaths.subList(start, Math.min(start + batchSize, imagePaths.size()));
+            app.getInferenceEngine().predictBatch(new ArrayList<>(batch))
+                    .whenComplete((predictions, error) -> Platform.runLater(() -> batchFinished(batch, predictions, error)));
+        }
+    }
+
+    private void batchFinished(List<String> batch, List<BatchPrediction> predictions, Throwable error) {
+        if (error != null) {
+            for (String imagePath : batch) {
+                rows.add(BatchRow.failed(imagePath, error.getMessage()));
+            }
+        } else {
+            for (BatchPrediction prediction : predictions) {
+                rows.add(BatchRow.of(prediction));
+                if (prediction.succeeded()) {
+                    app.analysisFinished(prediction.imagePath(), prediction.prediction());
+                }
+            }
+        }
+
+        finishedImages += batch.size();
+        pendingBatches--;
+        updateStatus();
+        if (pendingBatches == 0) {
+            setRunning(false);
+        }
+    }
+
+    private void updateStatus() {
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        progressBar.setProgress(totalImages == 0 ? 0 : (double) finishedImages / totalImages);
+        statusLabel.setText(String.format("%d / %d images analysed in %.1f s", finishedImages, totalImages, seconds));
+    }
+
+    private void setRunning(boolean running) {
+        progressBar.setVisible(running || finishedImages > 0);
+        startButton.setDisable(running);
+        chooseFolderButton.setDisable(running);
+        batchSizeSpinner.setDisable(running);
+    }
+
+    private static List<String> listImages(File folder) {
+        File[] files = folder.listFiles(file -> {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            return file.isFile() && IMAGE_EXTENSIONS.stream().anyMatch(name::endsWith);
+        });
+        if (files == null) {
+            return List.of();
+        }
+        Arrays.sort(files);
+        List<String> paths = new ArrayList<>(files.length);
+        for (File file : files) {
+            paths.add(file.getAbsolutePath());
+        }
+        return paths;
+    }
+
+    private record BatchRow(String imagePath, String fileName, String prediction, Float confidence, Double probability) {
+
+        static BatchRow of(BatchPrediction batchPrediction) {
+            if (!batchPrediction.succeeded()) {
+                return failed(batchPrediction.imagePath(), batchPrediction.error());
+            }
+            return new BatchRow(batchPrediction.imagePath(), new File(batchPrediction.imagePath()).getName(),
+                    batchPrediction.prediction().result(),
+                    batchPrediction.prediction().confidenceScore(),
+                    batchPrediction.prediction().probabilityScore());
+        }
+
+        static BatchRow failed(String imagePath, String error) {
+            return new BatchRow(imagePath, new File(imagePath).getName(), "Error: " + error, null, null);
+        }
+    }
+}
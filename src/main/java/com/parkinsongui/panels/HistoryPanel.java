@@ -0,0 +1,390 @@
+package com.parkinsongui.panels;
+
+import com.parkinsongui.App;
+import com.parkinsongui.history.CaptureIndex;
+import com.parkinsongui.history.ResultsLog;
+import com.parkinsongui.phone.TransferStats;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Map;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Every past capture, newest first. The list is virtualized: only the rows on screen exist,
+ * and a row's thumbnail is read (or made, the first time) only while it is visible. The list
+ * can be narrowed to captures with a result of one kind, or from a recent period, answered
+ * from the results log's day and prediction indexes.
+ */
+public class HistoryPanel extends VBox {
+    private static final double ROW_HEIGHT = CaptureIndex.THUMB_HEIGHT + 16;
+    // Decoded thumbnails are tiny, so a few MB covers thousands of rows
+    private static final ThumbnailCache<CaptureIndex.Entry> THUMBNAILS = new ThumbnailCache<>(16L * 1024 * 1024);
+
+    private App app;
+    private ListView<CaptureIndex.Entry> captureList;
+    private Label countLabel;
+    private Button refreshButton;
+    private Button exportButton;
+    private Button goBackButton;
+    private ChoiceBox<String> predictionFilter;
+    private ChoiceBox<Period> periodFilter;
+
+    private final ObservableList<CaptureIndex.Entry> captures = FXCollections.observableArrayList();
+    private final ExecutorService loader = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "history-thumbnails");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Opened on a loader thread by the first refresh
+    private volatile CaptureIndex index;
+    // Latest result per capture hash, for the rows on screen
+    private Map<String, ResultsLog.Result> latestResults = Map.of();
+    // Only the newest refresh may update the list, as filter changes can overtake each other
+    private int refreshGeneration;
+
+    private enum Period {
+        ANY("Any time", -1),
+        TODAY("Today", 0),
+        WEEK("Last 7 days", 6),
+        MONTH("Last 30 days", 29);
+
+        private final String label;
+        private final int daysBack;
+
+        Period(String label, int daysBack) {
+            this.label = label;
+            this.daysBack = daysBack;
+        }
+
+        LocalDate from() {
+            return daysBack < 0 ? null : LocalDate.now().minusDays(daysBack);
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    public HistoryPanel(App app) {
+        this.app = app;
+        initializeComponents();
+        setupLayout();
+        setupEventHandlers();
+    }
+
+    private void initializeComponents() {
+        String buttonStyle = "-fx-pref-height: 38; -fx-font-size: 14px; -fx-font-weight: bold; " +
+                "-fx-border-radius: 8; -fx-background-radius: 8; -fx-text-fill: white; " +
+                "-fx-effect: dropshadow(three-pass-box, rgba(0,0,0,0.3), 5, 0, 0, 2);";
+
+        refreshButton = new Button("Refresh");
+        refreshButton.setStyle(buttonStyle +
+                "-fx-background-color: linear-gradient(to right, #4dabf7, #9775fa);");
+
+        exportButton = new Button("Export CSV");
+        exportButton.setStyle(buttonStyle +
+                "-fx-background-color: linear-gradient(to right, #28a745, #218838);");
+
+        goBackButton = new Button("Go Back");
+        goBackButton.setStyle(buttonStyle +
+                "-fx-background-color: linear-gradient(to right, #6c757d, #495057);");
+
+        predictionFilter = new ChoiceBox<>();
+        predictionFilter.getItems().add("All captures");
+        for (ResultsLog.Prediction prediction : ResultsLog.Prediction.values()) {
+            predictionFilter.getItems().add(prediction.label());
+        }
+        predictionFilter.getSelectionModel().selectFirst();
+
+        periodFilter = new ChoiceBox<>(FXCollections.observableArrayList(Period.values()));
+        periodFilter.getSelectionModel().selectFirst();
+
+        countLabel = new Label("");
+        countLabel.setStyle("-fx-font-size: 13px; -fx-text-fill: #adb5bd;");
+
+        captureList = new ListView<>(captures);
+        // A fixed height lets the list lay out only the visible rows without measuring any
+        captureList.setFixedCellSize(ROW_HEIGHT);
+        captureList.setPlaceholder(new Label("No captures yet"));
+        captureList.setCellFactory(list -> new CaptureCell());
+    }
+
+    private void setupLayout() {
+        setAlignment(Pos.CENTER);
+        setSpacing(20);
+        setPadding(new Insets(20, 45, 20, 45));
+
+        VBox card = new VBox(18);
+        card.setAlignment(Pos.TOP_CENTER);
+        card.setPadding(new Insets(25));
+        card.setStyle(
+                "-fx-background-color: rgba(25, 25, 25, 1);" +
+                        "-fx-background-radius: 15;" +
+                        "-fx-border-radius: 15;" +
+                        "-fx-border-color: linear-gradient(to right, #6a11cb, #2575fc);" +
+                        "-fx-border-width: 2;" +
+                        "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.5), 15, 0, 0, 5);"
+        );
+
+        Label titleLabel = new Label("Capture History");
+        titleLabel.setStyle("-fx-font-size: 24px; -fx-font-weight: bold; -fx-text-fill: white;");
+
+        HBox controls = new HBox(15, predictionFilter, periodFilter, countLabel, refreshButton, exportButton);
+        controls.setAlignment(Pos.CENTER);
+
+        VBox.setVgrow(captureList, Priority.ALWAYS);
+        VBox.setVgrow(card, Priority.ALWAYS);
+
+        card.getChildren().addAll(titleLabel, controls, captureList, goBackButton);
+        getChildren().add(card);
+    }
+
+    private void setupEventHandlers() {
+        refreshButton.setOnAction(e -> refresh());
+        exportButton.setOnAction(e -> exportResults());
+        predictionFilter.setOnAction(e -> refresh());
+        periodFilter.setOnAction(e -> refresh());
+        goBackButton.setOnAction(e -> app.showHomePanel());
+    }
+
+    /**
+     * Picks up captures added or removed since the last look; cheap when there are none.
+     */
+    public void refresh() {
+        refreshButton.setDisable(true);
+        int generation = ++refreshGeneration;
+        int predictionIndex = predictionFilter.getSelectionModel().getSelectedIndex();
+        ResultsLog.Prediction prediction = predictionIndex > 0 ? ResultsLog.Prediction.values()[predictionIndex - 1] : null;
+        LocalDate from = periodFilter.getValue().from();
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                if (index == null) {
+                    index = new CaptureIndex(Paths.get(App.IMAGE_STORAGE_PATH), Paths.get(App.HISTORY_INDEX_PATH));
+                }
+                List<CaptureIndex.Entry> entries = index.refresh();
+                ResultsLog results = app.getResultsLog();
+                if (prediction != null || from != null) {
+                    // Captures with at least one matching result in the period
+                    Set<String> matching = results.query(from, null, prediction).stream()
+                            .map(ResultsLog.Result::captureHash)
+                            .collect(Collectors.toSet());
+                    entries = entries.stream().filter(entry -> matching.contains(hashOf(entry))).toList();
+                }
+                Map<String, ResultsLog.Result> latest = results.latestFor(
+                        entries.stream().map(HistoryPanel::hashOf).toList());
+                return new Listing(entries, latest, results.count(ResultsLog.Prediction.HEALTHY),
+                        results.count(ResultsLog.Prediction.PARKINSONS));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, loader).whenComplete((listing, error) -> Platform.runLater(() -> {
+            if (generation != refreshGeneration) {
+                return;
+            }
+            refreshButton.setDisable(false);
+            if (error != null) {
+                System.err.println("Could not list captures: " + error.getMessage());
+                countLabel.setText("Could not list captures");
+                return;
+            }
+            showListing(listing);
+        }));
+    }
+
+    private void showListing(Listing listing) {
+        List<CaptureIndex.Entry> entries = listing.entries();
+        boolean resultsChanged = !listing.latest().equals(latestResults);
+        latestResults = listing.latest();
+        if (!entries.equals(captures)) {
+            captures.setAll(entries);
+        } else if (resultsChanged) {
+            captureList.refresh();
+        }
+        countLabel.setText(entries.size() + (entries.size() == 1 ? " capture" : " captures")
+                + String.format(Locale.ROOT, "   (results: %d %s, %d %s)",
+                listing.healthy(), ResultsLog.Prediction.HEALTHY.label(),
+                listing.parkinsons(), ResultsLog.Prediction.PARKINSONS.label()));
+    }
+
+    // Captures are named by the hash of their bytes, which is also how results are kept
+    private static String hashOf(CaptureIndex.Entry entry) {
+        String name = entry.image().getFileName().toString();
+        int dot = name.indexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    private void exportResults() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Results");
+        fileChooser.setInitialFileName("results.csv");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
+        File target = fileChooser.showSaveDialog(app.getPrimaryStage());
+        if (target == null) {
+            return;
+        }
+        exportButton.setDisable(true);
+        CompletableFuture.supplyAsync(() -> {
+            try (Writer out = Files.newBufferedWriter(target.toPath(), StandardCharsets.UTF_8)) {
+                return app.getResultsLog().exportCsv(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, loader).whenComplete((rows, error) -> Platform.runLater(() -> {
+            exportButton.setDisable(false);
+            if (error != null) {
+                System.err.println("Could not export results: " + error.getMessage());
+                countLabel.setText("Export failed");
+                return;
+            }
+            countLabel.setText("Exported " + rows + (rows == 1 ? " result" : " results") + " to " + target.getName());
+        }));
+    }
+
+    // Only the capture being analysed is pinned, by the run panel; a row may be stale by now
+    private void analyse(CaptureIndex.Entry entry) {
+        if (!Files.isRegularFile(entry.image())) {
+            // Removed by retention since the list was made
+            refresh();
+            return;
+        }
+        app.showRunPanel(entry.image().toString());
+    }
+
+    public void close() {
+        loader.shutdownNow();
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    private record Listing(List<CaptureIndex.Entry> entries, Map<String, ResultsLog.Result> latest,
+                           int healthy, int parkinsons) {
+    }
+
+    private class CaptureCell extends ListCell<CaptureIndex.Entry> {
+        private final ImageView thumbnail = new ImageView();
+        private final Label nameLabel = new Label();
+        private final Label detailLabel = new Label();
+        private final Button analyseButton = new Button("Analyse");
+        private final HBox row;
+        // Read by loader threads to skip rows that scrolled away before their turn came
+        private volatile CaptureIndex.Entry shown;
+
+        CaptureCell() {
+            thumbnail.setFitWidth(CaptureIndex.THUMB_WIDTH);
+            thumbnail.setFitHeight(CaptureIndex.THUMB_HEIGHT);
+            thumbnail.setPreserveRatio(true);
+
+            nameLabel.setStyle("-fx-font-size: 14px; -fx-font-weight: bold; -fx-text-fill: #e9ecef;");
+            detailLabel.setStyle("-fx-font-size: 12px; -fx-text-fill: #adb5bd;");
+
+            analyseButton.setStyle("-fx-font-size: 13px; -fx-background-radius: 8; " +
+                    "-fx-background-color: linear-gradient(to right, #28a745, #218838); -fx-text-fill: white;");
+            analyseButton.setOnAction(e -> {
+                if (getItem() != null) {
+                    analyse(getItem());
+                }
+            });
+
+            Region spacer = new Region();
+            HBox.setHgrow(spacer, Priority.ALWAYS);
+            row = new HBox(15, thumbnail, new VBox(6, nameLabel, detailLabel), spacer, analyseButton);
+            row.setAlignment(Pos.CENTER_LEFT);
+
+            setOnMouseClicked(e -> {
+                if (e.getClickCount() == 2 && getItem() != null) {
+                    analyse(getItem());
+                }
+            });
+        }
+
+        @Override
+        protected void updateItem(CaptureIndex.Entry entry, boolean empty) {
+            super.updateItem(entry, empty);
+            shown = empty ? null : entry;
+            if (empty || entry == null) {
+                setGraphic(null);
+                return;
+            }
+            nameLabel.setText(entry.image().getFileName().toString());
+            String details = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(entry.modified()))
+                    + "   " + TransferStats.formatBytes(entry.size());
+            ResultsLog.Result result = latestResults.get(hashOf(entry));
+            if (result != null) {
+                details += String.format(Locale.ROOT, "   %s (%.1f%%)", result.prediction().label(), result.confidence());
+            }
+            detailLabel.setText(details);
+            setGraphic(row);
+
+            Image cached = THUMBNAILS.get(entry);
+            if (cached != null) {
+                thumbnail.setImage(cached);
+                return;
+            }
+            thumbnail.setImage(PreviewImages.placeholder());
+            CompletableFuture.supplyAsync(() -> load(entry), loader).whenComplete((image, error) -> Platform.runLater(() -> {
+                if (error != null) {
+                    System.err.println("No thumbnail for " + entry.image() + ": " + error.getMessage());
+                }
+                if (image != null && entry.equals(shown)) {
+                    thumbnail.setImage(image);
+                }
+            }));
+        }
+
+        private Image load(CaptureIndex.Entry entry) {
+            if (!entry.equals(shown)) {
+                // Scrolled past before the loader got to it
+                return null;
+            }
+            Image cached = THUMBNAILS.get(entry);
+            if (cached != null) {
+                return cached;
+            }
+            try {
+                Image image = new Image(new ByteArrayInputStream(index.thumbnail(entry)));
+                if (!image.isError()) {
+                    THUMBNAILS.put(entry, image);
+                    return image;
+                }
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
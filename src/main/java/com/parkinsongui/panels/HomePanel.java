@@ -15,6 +15,7 @@
     public class HomePanel extends StackPane {
         private App app;
         private Button scanImageButton;
+        private Button historyButton;
         private Button settingsButton;
         private Button aboutButton;
         private Button powerOffButton;
@@ -29,16 +30,19 @@
         private void initializeComponents() {
             // Load icons
             Image scanIcon = new Image(getClass().getResourceAsStream("/scan.png"));
+            Image historyIcon = new Image(getClass().getResourceAsStream("/upload.png"));
             Image settingsIcon = new Image(getClass().getResourceAsStream("/settings.png"));
             Image aboutIcon = new Image(getClass().getResourceAsStream("/about.png"));
             Image powerIcon = new Image(getClass().getResourceAsStream("/power.png"));
 
             scanImageButton = new Button("Scan Image", new ImageView(scanIcon));
+            historyButton = new Button("History", new ImageView(historyIcon));
             settingsButton = new Button("Settings", new ImageView(settingsIcon));
             aboutButton = new Button("About", new ImageView(aboutIcon));
             powerOffButton = new Button("Power Off", new ImageView(powerIcon));
 
             resizeButtonIcon(scanImageButton);
+            resizeButtonIcon(historyButton);
             resizeButtonIcon(settingsButton);
             resizeButtonIcon(aboutButton);
             resizeButtonIcon(powerOffButton);
@@ -60,6 +64,7 @@
             """;
 
             scanImageButton.setStyle(baseButtonStyle);
+            historyButton.setStyle(baseButtonStyle);
             settingsButton.setStyle(baseButtonStyle);
             aboutButton.setStyle(baseButtonStyle);
             powerOffButton.setStyle(baseButtonStyle.replace("#4dabf7, #9775fa", "#ff6b6b, #f06595")
@@ -70,6 +75,10 @@
                     "-fx-background-color: linear-gradient(to right, #36404a, #2f343a);"));
             scanImageButton.setOnMouseExited(e -> scanImageButton.setStyle(baseButtonStyle));
 
+            historyButton.setOnMouseEntered(e -> historyButton.setStyle(baseButtonStyle +
+                    "-fx-background-color: linear-gradient(to right, #36404a, #2f343a);"));
+            historyButton.setOnMouseExited(e -> historyButton.setStyle(baseButtonStyle));
+
             settingsButton.setOnMouseEntered(e -> settingsButton.setStyle(baseButtonStyle +
                     "-fx-background-color: linear-gradient(to right, #36404a, #2f343a);"));
             settingsButton.setOnMouseExited(e -> settingsButton.setStyle(baseButtonStyle));
@@ -106,7 +115,7 @@
             VBox headerBox = new VBox(6, titleBox, subtitleLabel);
             headerBox.setAlignment(Pos.CENTER);
 
-            VBox buttonBox = new VBox(18, scanImageButton, settingsButton, aboutButton, powerOffButton);
+            VBox buttonBox = new VBox(18, scanImageButton, historyButton, settingsButton, aboutButton, powerOffButton);
             buttonBox.setAlignment(Pos.CENTER);
 
             // Card container (refined)
@@ -131,6 +140,7 @@
 
         private void setupEventHandlers() {
             scanImageButton.setOnAction(e -> app.showScanImagePanel());
+            historyButton.setOnAction(e -> app.showHistoryPanel());
             settingsButton.setOnAction(e -> {});
             aboutButton.setOnAction(e -> {});
             powerOffButton.setOnAction(e -> Platform.exit());
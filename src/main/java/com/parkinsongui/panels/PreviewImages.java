@@ -0,0 +1,125 @@
+package com.parkinsongui.panels;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the downscaled image previews shown before an analysis, and the thumbnails.
+ *
+ * Images are decoded on background threads straight to the requested size, so a large
+ * photo never costs its full resolution in memory or blocks the FX thread. Decoded images
+ * are kept in a {@link ThumbnailCache} bounded to -Dparkinson.previewCacheMb (default 64),
+ * and concurrent requests for the same image share one decode.
+ */
+public final class PreviewImages {
+    public static final double PREVIEW_WIDTH = 400;
+    public static final double PREVIEW_HEIGHT = 300;
+    public static final String CACHE_SIZE_PROPERTY = "parkinson.previewCacheMb";
+
+    private static final ThumbnailCache<Key> CACHE =
+            new ThumbnailCache<>(Long.getLong(CACHE_SIZE_PROPERTY, 64) * 1024 * 1024);
+    private static final Map<Key, CompletableFuture<Image>> LOADING = new ConcurrentHashMap<>();
+    private static final ExecutorService LOADER = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "preview-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Image PLACEHOLDER = solid(Color.web("#2a2d31"));
+
+    private PreviewImages() {
+    }
+
+    public static Image load(File imageFile) {
+        return load(imageFile, PREVIEW_WIDTH, PREVIEW_HEIGHT);
+    }
+
+    // Decoded straight to the requested size, keeping the aspect ratio
+    public static Image load(File imageFile, double width, double height) {
+        return new Image(imageFile.toURI().toString(), width, height, true, false);
+    }
+
+    public static CompletableFuture<Image> loadAsync(File imageFile) {
+        return loadAsync(imageFile, PREVIEW_WIDTH, PREVIEW_HEIGHT);
+    }
+
+    /**
+     * The image at the requested size, from the cache or decoded in the background. The
+     * future completes on a loader thread.
+     */
+    public static CompletableFuture<Image> loadAsync(File imageFile, double width, double height) {
+        Key key = Key.of(imageFile, width, height);
+        Image cached = CACHE.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<Image> loading = new CompletableFuture<>();
+        CompletableFuture<Image> running = LOADING.putIfAbsent(key, loading);
+        if (running != null) {
+            return running;
+        }
+        LOADER.execute(() -> {
+            try {
+                Image image = load(imageFile, width, height);
+                if (image.isError()) {
+                    throw image.getException() != null
+                            ? image.getException() : new IOException("Cannot decode " + imageFile);
+                }
+                CACHE.put(key, image);
+                loading.complete(image);
+            } catch (Exception e) {
+                loading.completeExceptionally(e);
+            } finally {
+                LOADING.remove(key, loading);
+            }
+        });
+        return loading;
+    }
+
+    /**
+     * The cached image if there is one, without decoding anything.
+     */
+    public static Image cached(File imageFile, double width, double height) {
+        return CACHE.get(Key.of(imageFile, width, height));
+    }
+
+    /**
+     * Shown while an image decodes; an ImageView stretches it to its fit size.
+     */
+    public static Image placeholder() {
+        return PLACEHOLDER;
+    }
+
+    public static ThumbnailCache.Stats cacheStats() {
+        return CACHE.stats();
+    }
+
+    private static Image solid(Color color) {
+        WritableImage image = new WritableImage(4, 3);
+        PixelWriter writer = image.getPixelWriter();
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 4; x++) {
+                writer.setColor(x, y, color);
+            }
+        }
+        return image;
+    }
+
+    // The modification time and size make an edited or replaced file a different entry
+    private record Key(String path, long modified, long length, double width, double height) {
+
+        static Key of(File file, double width, double height) {
+            File absolute = file.getAbsoluteFile();
+            return new Key(absolute.getPath(), absolute.lastModified(), absolute.length(), width, height);
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package com.parkinsongui.panels;
 
 import com.parkinsongui.App;
+import com.parkinsongui.inference.ModelDescriptor;
+import com.parkinsongui.metrics.LatencyLog;
+import com.parkinsongui.metrics.LatencyTrace;
 import javafx.animation.Interpolator;
 import javafx.animation.RotateTransition;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.TitledPane;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.LinearGradient;
@@ -15,6 +19,8 @@ import javafx.scene.shape.Arc;
 import javafx.scene.shape.ArcType;
 import javafx.util.Duration;
 
+import java.util.Map;
+
 public class ResultPanel extends VBox {
     private App app;
     private Label stateLabel;
@@ -30,6 +36,10 @@ public class ResultPanel extends VBox {
     private Label layersLabel;
     private Label parametersLabel;
 
+    private TitledPane latencyPane;
+    private GridPane latencyGrid;
+    private Label latencySummaryLabel;
+
     public ResultPanel(App app) {
         this.app = app;
         setupLayout();
@@ -93,10 +103,65 @@ public class ResultPanel extends VBox {
        """);
         backButton.setOnAction(e -> app.showHomePanel());
 
-        card.getChildren().addAll(resultsLabel, predictionCard, chartsBox, statsBox, backButton);
+        card.getChildren().addAll(resultsLabel, predictionCard, chartsBox, statsBox, createLatencyPane(), backButton);
         getChildren().add(card);
     }
 
+    private TitledPane createLatencyPane() {
+        latencyGrid = new GridPane();
+        latencyGrid.setHgap(24);
+        latencyGrid.setVgap(4);
+
+        latencySummaryLabel = new Label("");
+        latencySummaryLabel.setStyle("-fx-font-size: 12px; -fx-text-fill: #adb5bd;");
+
+        VBox content = new VBox(10, latencyGrid, latencySummaryLabel);
+        content.setPadding(new Insets(10));
+
+        latencyPane = new TitledPane("⏱ Latency breakdown", content);
+        latencyPane.setExpanded(false);
+        latencyPane.setMaxWidth(660);
+        return latencyPane;
+    }
+
+    /**
+     * Shows where the time of the last analysis went, next to the recent p50/p95/p99 per phase.
+     */
+    public void displayLatency(LatencyTrace trace, Map<String, LatencyLog.Summary> summaries) {
+        latencyGrid.getChildren().clear();
+        addLatencyRow(0, "Phase", "This run", "Share", "p50 / p95 / p99", true);
+
+        double total = trace.totalNanos() / 1_000_000.0;
+        int row = 1;
+        for (LatencyTrace.Phase phase : trace.phases()) {
+            addLatencyRow(row++, phase.name(), String.format("%.1f ms", phase.millis()),
+                    total > 0 ? String.format("%.0f%%", phase.millis() * 100 / total) : "--",
+                    formatPercentiles(summaries.get(phase.name())), false);
+        }
+        addLatencyRow(row, "Total", String.format("%.1f ms", total), "",
+                formatPercentiles(summaries.get(LatencyLog.TOTAL)), true);
+
+        LatencyLog.Summary overall = summaries.get(LatencyLog.TOTAL);
+        latencySummaryLabel.setText(overall == null ? "" : "Percentiles over the last " + overall.count() + " analyses");
+        latencyPane.setText(String.format("⏱ Latency breakdown: %.0f ms end to end", total));
+    }
+
+    private void addLatencyRow(int row, String name, String value, String share, String percentiles, boolean bold) {
+        String style = "-fx-font-size: 12px; -fx-text-fill: #e9ecef;" + (bold ? " -fx-font-weight: 700;" : "");
+        Label[] cells = {new Label(name), new Label(value), new Label(share), new Label(percentiles)};
+        for (int column = 0; column < cells.length; column++) {
+            cells[column].setStyle(style);
+            latencyGrid.add(cells[column], column, row);
+        }
+    }
+
+    private static String formatPercentiles(LatencyLog.Summary summary) {
+        if (summary == null) {
+            return "--";
+        }
+        return String.format("%.0f / %.0f / %.0f ms", summary.p50(), summary.p95(), summary.p99());
+    }
+
     private VBox createProgressRing(String label, String value, double percent) {
         Arc arc = new Arc(0, 0, 70, 70, 90, 0);
         arc.setType(ArcType.OPEN);
@@ -157,7 +222,7 @@ public class ResultPanel extends VBox {
     }
 
     public void displayResults(String state, float confidence, double rawProbability,
-                               float inferenceTime, float modelSize, int modelLayers, int totalParameters) {
+                               float inferenceTime, ModelDescriptor model) {
         // Prediction box styling
         if (state.equalsIgnoreCase("Healthy")) {
             predictionCard.setStyle("""
@@ -177,12 +242,18 @@ public class ResultPanel extends VBox {
            """);
         }
         stateLabel.setText(state);
+        // Filled in by displayLatency once the result has been laid out
+        latencyGrid.getChildren().clear();
+        latencySummaryLabel.setText("");
+        latencyPane.setText("⏱ Latency breakdown");
 
         confidenceValueLabel.setText(String.format("%.2f%%", confidence));
         probabilityValueLabel.setText(String.format("%.4f", rawProbability));
         inferenceLabel.setText(String.format("%.2f ms", inferenceTime));
-        modelSizeLabel.setText(String.format("%.2f MB", modelSize));
-        layersLabel.setText(String.valueOf(modelLayers));
-        parametersLabel.setText(String.valueOf(totalParameters));
+        modelSizeLabel.setText(model == null ? "--" : String.format("%.2f MB", model.sizeMb()));
+        // Layer and parameter counts appear once the worker has written the model's .meta file
+        boolean known = model != null && model.hasArchitecture();
+        layersLabel.setText(known ? String.valueOf(model.layers()) : "--");
+        parametersLabel.setText(known ? String.valueOf(model.parameters()) : "--");
     }
 }
\ No newline at end of file
@@ -1,17 +1,20 @@
 package com.parkinsongui.panels;
 
 import com.parkinsongui.App;
-import javafx.concurrent.Task;
+import com.parkinsongui.inference.InferenceStage;
+import com.parkinsongui.inference.ModelDescriptor;
+import com.parkinsongui.inference.PredictionResult;
+import com.parkinsongui.metrics.LatencyTrace;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 public class RunPanel extends VBox {
     private App app;
@@ -22,15 +25,17 @@ public class RunPanel extends VBox {
     private Button executeButton;
     private Button goBackButton;
     private ProgressBar loadingBar;
+    private Label stageLabel;
     private String selectedImagePath;
 
     private String result;
     private float confidenceScore;
     private double probabilityScore;
     private float inferenceTime;
-    private float modelSize;
-    private int modelLayers;
-    private int totalParameters;
+
+    // Timeline of the running analysis; stage events are timestamped where they are received
+    private LatencyTrace trace;
+    private InferenceStage currentStage;
 
     public RunPanel(App app) {
         this.app = app;
@@ -40,6 +45,16 @@ public class RunPanel extends VBox {
     }
 
     public void setSelectedImage(String imagePath) {
+        // The capture store must not rename or remove the image this panel will analyse
+        if (selectedImagePath != null && !selectedImagePath.equals(imagePath)) {
+            app.analysisAbandoned(selectedImagePath);
+        }
+        if (selectedImagePath != null) {
+            app.getCaptureStore().unpin(Paths.get(selectedImagePath));
+        }
+        if (imagePath != null) {
+            app.getCaptureStore().pin(Paths.get(imagePath));
+        }
         this.selectedImagePath = imagePath;
         System.out.println("RunPanel received image path: " + imagePath); // Debug line
         loadSelectedImage();
@@ -47,15 +62,21 @@ public class RunPanel extends VBox {
 
     private void loadSelectedImage() {
         if (selectedImagePath != null) {
-            try {
-                File imageFile = new File(selectedImagePath);
-                System.out.println("Loading image - File exists: " + imageFile.exists() + ", Size: " + imageFile.length()); // Debug
-                Image image = new Image(imageFile.toURI().toString(), 400, 300, true, false);
+            String requested = selectedImagePath;
+            File imageFile = new File(requested);
+            imagePreview.setImage(PreviewImages.placeholder());
+            PreviewImages.loadAsync(imageFile).whenComplete((image, error) -> Platform.runLater(() -> {
+                // Another image may have been selected while this one decoded
+                if (!requested.equals(selectedImagePath)) {
+                    return;
+                }
+                if (error != null) {
+                    System.err.println("Error loading selected image: " + error.getMessage());
+                    imagePreview.setImage(null);
+                    return;
+                }
                 imagePreview.setImage(image);
-            } catch (Exception e) {
-                System.err.println("Error loading selected image: " + e.getMessage());
-                e.printStackTrace();
-            }
+            }));
         } else {
             System.out.println("selectedImagePath is null"); // Debug
         }
@@ -97,10 +118,13 @@ public class RunPanel extends VBox {
         goBackButton.setStyle(buttonStyle +
                 "-fx-background-color: linear-gradient(to right, #6c757d, #495057); -fx-text-fill: white;");
 
-        loadingBar = new ProgressBar();
+        loadingBar = new ProgressBar(0);
         loadingBar.setVisible(false);
         loadingBar.setPrefWidth(400);
 
+        stageLabel = new Label("");
+        stageLabel.setStyle("-fx-font-size: 13px; -fx-text-fill: #ced4da;");
+
         // Hover effects
         executeButton.setOnMouseEntered(e -> executeButton.setStyle(buttonStyle +
                 "-fx-background-color: linear-gradient(to right, #34ce57, #28a745); -fx-text-fill: white;"));
@@ -166,7 +190,8 @@ public class RunPanel extends VBox {
                 imagePreview,
                 radioContainer,
                 buttonBox,
-                loadingBar
+                loadingBar,
+                stageLabel
         );
 
         // Root container padding
@@ -177,7 +202,13 @@ public class RunPanel extends VBox {
 
     private void setupEventHandlers() {
         executeButton.setOnAction(e -> executePythonScript());
-        goBackButton.setOnAction(e -> app.showScanImagePanel());
+        goBackButton.setOnAction(e -> {
+            // An upload taken from the phone queue and not analysed waits for its turn again
+            if (selectedImagePath != null) {
+                app.analysisAbandoned(selectedImagePath);
+            }
+            app.showScanImagePanel();
+        });
     }
 
     private void executePythonScript() {
@@ -186,84 +217,97 @@ public class RunPanel extends VBox {
             return;
         }
 
+        loadingBar.setProgress(0);
         loadingBar.setVisible(true);
         executeButton.setDisable(true);
         goBackButton.setDisable(true);
 
-        Task<Void> task = new Task<>() {
-            @Override
-            protected Void call() throws Exception {
-                String testType = handwritingRadio.isSelected() ? "s" : "w";
-
-                ProcessBuilder pb = new ProcessBuilder(
-                        "venv/bin/python",
-                        "detection.py",
-                        selectedImagePath
-                );
-
-                pb.directory(new File("python"));
-                pb.redirectErrorStream(true);
-                Process process = pb.start();
-
-                StringBuilder outputBuilder = new StringBuilder();
-                String[] lines = new String[7];
-                int lineCount = 0;
-
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        if (lineCount < 7) {
-                            lines[lineCount] = line;
-                            lineCount++;
-                        } else {
-                            outputBuilder.append(line).append("\n");
+        trace = new LatencyTrace();
+        currentStage = null;
+
+        app.getInferenceEngine().predict(selectedImagePath, stage -> {
+                    long now = System.nanoTime();
+                    Platform.runLater(() -> stageStarted(stage, now));
+                })
+                .whenComplete((prediction, error) -> {
+                    long completed = System.nanoTime();
+                    // Read off the FX thread; the descriptor is memoized after the first call per model
+                    ModelDescriptor model = error == null ? describeModel() : null;
+                    Platform.runLater(() -> {
+                        stageStarted(InferenceStage.DONE, completed);
+                        trace.mark("Result handoff");
+
+                        loadingBar.setVisible(false);
+                        executeButton.setDisable(false);
+                        goBackButton.setDisable(false);
+
+                        if (error != null) {
+                            System.out.println("Fatal failure");
+                            System.err.println(error.getMessage());
+                            stageLabel.setText("Analysis failed: " + error.getMessage());
+                            app.analysisAbandoned(selectedImagePath);
+                            return;
                         }
-                        System.out.println(line);
-                    }
-                }
-
-                if (lineCount >= 3) {
-                    result = lines[0];
-                    confidenceScore = Float.parseFloat(lines[1]);
-                    probabilityScore = Double.parseDouble(lines[2]);
-                    inferenceTime = Float.parseFloat(lines[3]);
-                    modelSize = Float.parseFloat(lines[4]);
-                    modelLayers = Integer.parseInt(lines[5]);
-                    totalParameters = Integer.parseInt(lines[6]);
-                }
+                        app.analysisFinished(selectedImagePath, prediction);
+                        showPrediction(prediction, model);
+                    });
+                });
+    }
 
-                process.waitFor();
-                return null;
-            }
+    private void stageStarted(InferenceStage stage, long now) {
+        if (stage == currentStage) {
+            return;
+        }
+        // Until the first event the request sits in the cache lookup and the worker queue
+        trace.mark(currentStage == null ? "Queue & cache lookup" : currentStage.label(), now);
+        currentStage = stage;
+
+        loadingBar.setProgress(Math.max(loadingBar.getProgress(), stage.progress()));
+        String breakdown = formatBreakdown();
+        if (stage == InferenceStage.DONE) {
+            stageLabel.setText(String.format("Done in %.0f ms (%s)", trace.totalNanos() / 1_000_000.0, breakdown));
+        } else {
+            stageLabel.setText(stage.label() + "...   " + breakdown);
+        }
+    }
 
-            @Override
-            protected void succeeded() {
-                loadingBar.setVisible(false);
-                executeButton.setDisable(false);
-                goBackButton.setDisable(false);
-                app.showResultPanel(result, confidenceScore, probabilityScore, inferenceTime, modelSize, modelLayers, totalParameters);
-
-                System.out.println("----------------");
-                System.out.println(result);
-                System.out.println(confidenceScore);
-                System.out.println(probabilityScore);
-                System.out.println(inferenceTime);
-                System.out.println(modelSize);
-                System.out.println(modelLayers);
-                System.out.println(totalParameters);
+    private String formatBreakdown() {
+        StringBuilder text = new StringBuilder();
+        for (LatencyTrace.Phase phase : trace.phases()) {
+            if (text.length() > 0) {
+                text.append(", ");
             }
+            text.append(String.format("%s %.0f ms", phase.name().toLowerCase(), phase.millis()));
+        }
+        return text.toString();
+    }
 
-            @Override
-            protected void failed() {
-                loadingBar.setVisible(false);
-                executeButton.setDisable(false);
-                goBackButton.setDisable(false);
-
-                System.out.println("Fatal failure");
-            }
-        };
+    private ModelDescriptor describeModel() {
+        try {
+            return app.getInferenceEngine().describeModel();
+        } catch (IOException e) {
+            System.err.println("Could not describe model: " + e.getMessage());
+            return null;
+        }
+    }
 
-        new Thread(task).start();
+    private void showPrediction(PredictionResult prediction, ModelDescriptor model) {
+        result = prediction.result();
+        confidenceScore = prediction.confidenceScore();
+        probabilityScore = prediction.probabilityScore();
+        inferenceTime = prediction.inferenceTime();
+
+        app.showResultPanel(result, confidenceScore, probabilityScore, inferenceTime, model, trace);
+
+        System.out.println("----------------");
+        System.out.println(result);
+        System.out.println(confidenceScore);
+        System.out.println(probabilityScore);
+        System.out.println(inferenceTime);
+        if (model != null) {
+            System.out.println(model.sizeMb());
+            System.out.println(model.layers());
+            System.out.println(model.parameters());
+        }
     }
 }
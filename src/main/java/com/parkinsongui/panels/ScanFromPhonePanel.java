@@ -1,6 +1,17 @@
 package com.parkinsongui.panels;
 
 import com.parkinsongui.App;
+import com.parkinsongui.history.CaptureStore;
+import com.parkinsongui.inference.SpeculativeInferenceEngine;
+import com.parkinsongui.phone.CaptureSettings;
+import com.parkinsongui.phone.ChunkedUploads;
+import com.parkinsongui.phone.IngestQueue;
+import com.parkinsongui.phone.LiveFrames;
+import com.parkinsongui.phone.MultipartStreamParser;
+import com.parkinsongui.phone.PhoneUploadServer;
+import com.parkinsongui.phone.QrCodes;
+import com.parkinsongui.phone.StaticAsset;
+import com.parkinsongui.phone.TransferStats;
 import javafx.application.Platform;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.geometry.Insets;
@@ -12,73 +23,179 @@ import javafx.scene.image.ImageView;
 import javafx.scene.layout.VBox;
 import javafx.scene.layout.HBox;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.EncodeHintType;
-import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
-import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
-
-import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 
-import javax.imageio.ImageIO;
-import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ScanFromPhonePanel extends HBox {
 
     private static final int PORT = 8080;
     private static final int QR_SIZE = 250;
+    private static final long MAX_UPLOAD_BYTES = 100L * 1024 * 1024;
+    // Without a new frame for this long the live preview gives way to the setup steps again
+    private static final long LIVE_IDLE_MILLIS = 3000;
 
     private App app;
-    private HttpServer server;
+    // Null until the panel is first shown, and again after "Stop Server"
+    private PhoneUploadServer server;
     private String serverUrl;
-    private volatile byte[] latestImage;
+    private boolean serverStarting;
+    // Handed over from the starting thread to the FX thread; a stop in between shuts it down
+    private PhoneUploadServer startedServer;
+    private boolean stopRequested;
+    private ChunkedUploads chunkedUploads;
+    private StaticAsset page;
+    private StaticAsset config;
+    private final IngestQueue ingestQueue;
+    private final CaptureSettings captureSettings = CaptureSettings.fromSystemProperties();
+    private final TransferStats transferStats = new TransferStats();
+    private final LiveFrames liveFrames;
+    // Decoded frame waiting for the FX thread; a newer one simply replaces it
+    private final AtomicReference<LivePreview> pendingPreview = new AtomicReference<>();
+    private volatile boolean previewRunning;
+    private Thread previewThread;
+    // The session whose QR code is on screen; every phone that scans it uploads into it
+    private String currentSession;
     private Button goToRunPanelButton;
+    private ImageView qrImageView;
+    private Label urlLabel;
+    private Label serverStatusLabel;
+    private Button serverButton;
+    private Label waitingLabel;
+    private Label transferLabel;
+    private VBox sessionList;
+    private VBox stepsContainer;
+    private VBox liveBox;
+    private ImageView liveView;
+    private Label liveLabel;
+    private Button freezeButton;
+    private LiveFrames.Frame displayedFrame;
 
     public ScanFromPhonePanel(App app) {
         this.app = app;
-        try {
-            startServer();
-            setupLayout();
-        } catch (Exception e) {
-            e.printStackTrace();
+        this.ingestQueue = app.getIngestQueue();
+        this.liveFrames = new LiveFrames(ingestQueue);
+        currentSession = ingestQueue.openSession();
+        setupLayout();
+        ingestQueue.setListener(() -> Platform.runLater(this::refreshSessions));
+        refreshSessions();
+    }
+
+    /**
+     * Starts the upload server unless it is already running or starting. Looking up the
+     * network address and binding the port happen off the FX thread; the QR code appears
+     * once the server is listening.
+     */
+    public void startServer() {
+        if (server != null || serverStarting) {
+            return;
         }
+        serverStarting = true;
+        synchronized (this) {
+            stopRequested = false;
+        }
+        showServerState("● Starting Server...", "#fcc419");
+        CompletableFuture.runAsync(() -> {
+            PhoneUploadServer created;
+            try {
+                created = createServer();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            synchronized (this) {
+                if (!stopRequested) {
+                    startedServer = created;
+                    return;
+                }
+            }
+            // Stopped while binding, possibly on the way out where no FX callback would run
+            created.stop();
+        }).whenComplete((ignored, error) -> Platform.runLater(() -> {
+            serverStarting = false;
+            PhoneUploadServer started;
+            boolean stopped;
+            synchronized (this) {
+                started = startedServer;
+                startedServer = null;
+                stopped = stopRequested;
+            }
+            if (stopped) {
+                showServerState("● Server Stopped", "#adb5bd");
+                return;
+            }
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                System.err.println("Could not start the phone server: " + cause.getMessage());
+                showServerState("● Server Failed: " + cause.getMessage(), "#ff6b6b");
+                return;
+            }
+            server = started;
+            serverUrl = started.getUrl();
+            showSessionQr();
+            showServerState("● Server Running", "#51cf66");
+            startLivePreview();
+        }));
     }
 
-    private void startServer() throws IOException {
+    private PhoneUploadServer createServer() throws IOException {
         String localIP = getLocalIP();
-        server = HttpServer.create(new InetSocketAddress(localIP, PORT), 0);
-        server.createContext("/", new HttpHandler() {
+        PhoneUploadServer phoneServer = PhoneUploadServer.bind(localIP, PORT, Paths.get(App.PHONE_TLS_PATH));
+
+        if (page == null) {
+            // Encoded once; reconnecting phones mostly get a 304 from here on
+            page = StaticAsset.html(getWebPage());
+            config = new StaticAsset("application/json", captureSettings.toJson().getBytes(StandardCharsets.UTF_8));
+            // Kept across restarts, so a phone can resume an upload the stop interrupted
+            chunkedUploads = new ChunkedUploads(app.getCaptureStore(), ingestQueue, MAX_UPLOAD_BYTES, this::accept);
+        }
+        phoneServer.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/") || path.equals("/index.html")) {
+                page.handle(exchange);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        phoneServer.createContext("/config", config);
+        phoneServer.createContext("/upload", new HttpHandler() {
             @Override
             public void handle(HttpExchange exchange) throws IOException {
                 String method = exchange.getRequestMethod();
 
                 exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-                exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-                exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type");
+                exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "POST, OPTIONS");
+                exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, X-Original-Size");
 
                 if ("OPTIONS".equals(method)) {
                     exchange.sendResponseHeaders(200, -1);
-                    return;
-                }
-
-                if ("GET".equals(method)) {
-                    handleGetRequest(exchange);
+                    exchange.close();
                 } else if ("POST".equals(method)) {
                     handlePostRequest(exchange);
+                } else {
+                    exchange.getResponseHeaders().set("Allow", "POST, OPTIONS");
+                    exchange.sendResponseHeaders(405, -1);
+                    exchange.close();
                 }
             }
         });
-        server.start();
-
-        serverUrl = "http://" + localIP + ":" + PORT;
-        System.out.println("Server started: " + serverUrl);
+        chunkedUploads.register(phoneServer);
+        liveFrames.register(phoneServer);
+        phoneServer.createContext("/health", exchange -> {
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            PhoneUploadServer.sendJson(exchange, 200, "{\"status\":\"ok\",\"pending\":" + ingestQueue.pendingCount() + "}");
+        });
+        phoneServer.start();
+        return phoneServer;
     }
 
     private String getLocalIP() throws IOException {
@@ -98,44 +215,70 @@ public class ScanFromPhonePanel extends HBox {
         return "127.0.0.1";
     }
 
-    private void handleGetRequest(HttpExchange exchange) throws IOException {
-        String response = getWebPage();
-        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
-        exchange.sendResponseHeaders(200, response.getBytes("UTF-8").length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes("UTF-8"));
-        }
-    }
-
     private void handlePostRequest(HttpExchange exchange) throws IOException {
-        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String session = PhoneUploadServer.queryParameter(exchange, "session");
+        if (!ingestQueue.isOpen(session)) {
+            PhoneUploadServer.sendJson(exchange, 400, "{\"status\":\"error\",\"message\":\"Unknown session, scan the QR code again\"}");
+            return;
+        }
 
-        if (contentType != null && contentType.contains("multipart/form-data")) {
-            byte[] requestBody = exchange.getRequestBody().readAllBytes();
-            latestImage = extractImageFromMultipart(requestBody);
+        String boundary = MultipartStreamParser.boundaryOf(exchange.getRequestHeaders().getFirst("Content-Type"));
+        if (boundary == null) {
+            PhoneUploadServer.sendJson(exchange, 400, "{\"status\":\"error\",\"message\":\"Expected a multipart/form-data upload\"}");
+            return;
+        }
 
-            Platform.runLater(() -> {
-                goToRunPanelButton.setDisable(false);
-            });
+        MultipartStreamParser.UploadedFile upload;
+        try (InputStream body = exchange.getRequestBody()) {
+            upload = new MultipartStreamParser(body, boundary, MAX_UPLOAD_BYTES)
+                    .saveFirstFile(app.getCaptureStore());
+        } catch (IOException e) {
+            System.err.println("Upload failed: " + e.getMessage());
+            PhoneUploadServer.sendJson(exchange, 400, "{\"status\":\"error\",\"message\":\"Upload failed\"}");
+            return;
+        }
+        if (upload == null) {
+            PhoneUploadServer.sendJson(exchange, 400, "{\"status\":\"error\",\"message\":\"No image in upload\"}");
+            return;
         }
 
-        String response = "{\"status\":\"success\",\"message\":\"Image uploaded successfully\"}";
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(200, response.getBytes().length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes());
+        try {
+            accept(session, upload, originalSize(exchange.getRequestHeaders().getFirst("X-Original-Size")));
+        } catch (IOException | RuntimeException e) {
+            upload.discard();
+            PhoneUploadServer.sendJson(exchange, 500, "{\"status\":\"error\",\"message\":\"Upload could not be queued\"}");
+            return;
         }
+
+        PhoneUploadServer.sendJson(exchange, 200, "{\"status\":\"success\",\"message\":\"Image uploaded successfully\"}");
     }
 
-    private byte[] extractImageFromMultipart(byte[] data) {
-        String dataStr = new String(data);
-        int imageStart = dataStr.indexOf("\r\n\r\n") + 4;
-        int imageEnd = dataStr.lastIndexOf("\r\n--");
+    // Every completed upload, single-request or chunked, ends up here; if it throws, the caller discards the file
+    private void accept(String session, MultipartStreamParser.UploadedFile upload, long originalSize) throws IOException {
+        TransferStats.Snapshot transfer = transferStats.record(originalSize, upload.size());
+        System.out.println("[phone] " + session + " sent " + TransferStats.formatBytes(upload.size())
+                + "; so far " + transfer);
+        Platform.runLater(() -> transferLabel.setText(transfer.toString()));
 
-        if (imageStart > 3 && imageEnd > imageStart) {
-            return Arrays.copyOfRange(data, imageStart, imageEnd);
+        try {
+            ingestQueue.add(session, upload.path());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not queue upload: " + e.getMessage());
+            throw e;
+        }
+        app.uploadReceived(upload.path());
+    }
+
+    // Size of the photo before the page shrank it; 0 when the page sent the file as taken
+    private static long originalSize(String header) {
+        if (header == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return 0;
         }
-        return data;
     }
 
     private void setupLayout() {
@@ -171,7 +314,7 @@ public class ScanFromPhonePanel extends HBox {
         VBox headerBox = new VBox(8, headerLabel, subHeaderLabel);
         headerBox.setAlignment(Pos.CENTER_LEFT);
 
-        VBox stepsContainer = new VBox(20);
+        stepsContainer = new VBox(20);
         stepsContainer.setAlignment(Pos.CENTER_LEFT);
 
         VBox step1 = createStepCard("1", "Network Connection",
@@ -184,7 +327,7 @@ public class ScanFromPhonePanel extends HBox {
                 "Click the 'Take Photo' button on your phone and capture the image");
 
         VBox step4 = createStepCard("4", "Complete",
-                "Once uploaded, the 'Proceed to Analysis' button will be enabled");
+                "Uploads from every phone queue up in arrival order; 'Proceed to Analysis' opens the oldest one");
 
         stepsContainer.getChildren().addAll(step1, step2, step3, step4);
 
@@ -229,6 +372,11 @@ public class ScanFromPhonePanel extends HBox {
                         goToRunPanelButton.setStyle(buttonStyle + "-fx-background-color: linear-gradient(to right, #36404a, #2f343a);"));
                 goToRunPanelButton.setOnMouseExited(e ->
                         goToRunPanelButton.setStyle(buttonStyle));
+            } else {
+                // The queue can run empty again, so the button goes back to its idle look
+                goToRunPanelButton.setStyle(disabledStyle);
+                goToRunPanelButton.setOnMouseEntered(null);
+                goToRunPanelButton.setOnMouseExited(null);
             }
         });
 
@@ -236,11 +384,42 @@ public class ScanFromPhonePanel extends HBox {
         buttonContainer.setAlignment(Pos.CENTER_LEFT);
         buttonContainer.getChildren().add(goToRunPanelButton);
 
-        stepsPanel.getChildren().addAll(headerBox, stepsContainer, buttonContainer);
+        stepsPanel.getChildren().addAll(headerBox, stepsContainer, createLiveBox(), buttonContainer);
 
         return stepsPanel;
     }
 
+    // Takes the place of the setup steps while a phone is streaming
+    private VBox createLiveBox() {
+        liveView = new ImageView();
+        liveView.setFitWidth(340);
+        liveView.setFitHeight(255);
+        liveView.setPreserveRatio(true);
+
+        liveLabel = new Label();
+        liveLabel.setStyle("""
+            -fx-font-size: 12px;
+            -fx-text-fill: #adb5bd;
+            """);
+
+        freezeButton = new Button("Freeze Frame for Analysis");
+        freezeButton.setStyle("""
+            -fx-font-size: 13px;
+            -fx-background-radius: 10;
+            -fx-background-color: #2a2d31;
+            -fx-text-fill: #f1f3f5;
+            -fx-cursor: hand;
+            """);
+        freezeButton.setOnAction(e -> freezeFrame());
+
+        liveBox = new VBox(10, liveView, liveLabel, freezeButton);
+        liveBox.setAlignment(Pos.CENTER_LEFT);
+        liveBox.managedProperty().bind(liveBox.visibleProperty());
+        stepsContainer.managedProperty().bind(stepsContainer.visibleProperty());
+        liveBox.setVisible(false);
+        return liveBox;
+    }
+
     private VBox createStepCard(String stepNumber, String title, String description) {
         VBox stepCard = new VBox(8);
         stepCard.setAlignment(Pos.CENTER_LEFT);
@@ -316,27 +495,33 @@ public class ScanFromPhonePanel extends HBox {
             -fx-text-fill: #f8f9fa;
             """);
 
-        try {
-            BufferedImage qrImage = generateQRCode(serverUrl);
-            ImageView qrImageView = new ImageView(SwingFXUtils.toFXImage(qrImage, null));
-            qrImageView.setStyle("""
-                -fx-effect: dropshadow(gaussian, rgba(0,0,0,0.3), 10, 0, 0, 4);
-                """);
+        qrImageView = new ImageView();
+        qrImageView.setStyle("""
+            -fx-effect: dropshadow(gaussian, rgba(0,0,0,0.3), 10, 0, 0, 4);
+            """);
 
-            Label urlLabel = new Label(serverUrl);
-            urlLabel.setStyle("""
-                -fx-font-size: 12px;
-                -fx-text-fill: #6c757d;
-                -fx-font-family: 'Courier New', monospace;
-                """);
+        urlLabel = new Label();
+        urlLabel.setStyle("""
+            -fx-font-size: 12px;
+            -fx-text-fill: #6c757d;
+            -fx-font-family: 'Courier New', monospace;
+            """);
 
-            qrContainer.getChildren().addAll(qrTitle, qrImageView, urlLabel);
+        Button newSessionButton = new Button("Add Another Phone");
+        newSessionButton.setStyle("""
+            -fx-font-size: 13px;
+            -fx-background-radius: 10;
+            -fx-background-color: #2a2d31;
+            -fx-text-fill: #f1f3f5;
+            -fx-cursor: hand;
+            """);
+        newSessionButton.setOnAction(e -> {
+            currentSession = ingestQueue.openSession();
+            showSessionQr();
+        });
 
-        } catch (Exception e) {
-            Label errorLabel = new Label("QR Code generation failed");
-            errorLabel.setStyle("-fx-text-fill: #ff6b6b; -fx-font-size: 14px;");
-            qrContainer.getChildren().addAll(qrTitle, errorLabel);
-        }
+        qrContainer.getChildren().addAll(qrTitle, qrImageView, urlLabel, newSessionButton);
+        showSessionQr();
 
         VBox statusBox = new VBox(10);
         statusBox.setAlignment(Pos.CENTER);
@@ -356,83 +541,223 @@ public class ScanFromPhonePanel extends HBox {
             -fx-text-fill: #f8f9fa;
             """);
 
-        Label statusIndicator = new Label("● Server Running");
-        statusIndicator.setStyle("""
+        serverStatusLabel = new Label("● Server Stopped");
+        serverStatusLabel.setStyle("""
             -fx-font-size: 13px;
-            -fx-text-fill: #51cf66;
+            -fx-text-fill: #adb5bd;
             """);
 
-        Label waitingLabel = new Label("Waiting for image upload...");
+        serverButton = new Button("Start Server");
+        serverButton.setStyle("""
+            -fx-font-size: 12px;
+            -fx-background-radius: 10;
+            -fx-background-color: #2a2d31;
+            -fx-text-fill: #f1f3f5;
+            -fx-cursor: hand;
+            """);
+        serverButton.setOnAction(e -> {
+            if (server != null) {
+                stopServer();
+            } else {
+                startServer();
+            }
+        });
+
+        waitingLabel = new Label("Waiting for image upload...");
         waitingLabel.setStyle("""
             -fx-font-size: 12px;
             -fx-text-fill: #adb5bd;
             """);
 
-        statusBox.getChildren().addAll(statusTitle, statusIndicator, waitingLabel);
+        transferLabel = new Label("");
+        transferLabel.setStyle("""
+            -fx-font-size: 12px;
+            -fx-text-fill: #adb5bd;
+            """);
+
+        sessionList = new VBox(4);
+        sessionList.setAlignment(Pos.CENTER_LEFT);
+
+        statusBox.getChildren().addAll(statusTitle, serverStatusLabel, serverButton, waitingLabel, transferLabel, sessionList);
 
         qrPanel.getChildren().addAll(qrContainer, statusBox);
 
         return qrPanel;
     }
 
-    private BufferedImage generateQRCode(String text) throws WriterException {
-        Map<EncodeHintType, Object> hints = new HashMap<>();
-        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
-        hints.put(EncodeHintType.MARGIN, 1);
+    private void showServerState(String text, String color) {
+        serverStatusLabel.setText(text);
+        serverStatusLabel.setStyle("-fx-font-size: 13px; -fx-text-fill: " + color + ";");
+        serverButton.setText(server != null ? "Stop Server" : "Start Server");
+        serverButton.setDisable(serverStarting);
+    }
 
-        QRCodeWriter writer = new QRCodeWriter();
-        BitMatrix bitMatrix = writer.encode(text, BarcodeFormat.QR_CODE, QR_SIZE, QR_SIZE, hints);
+    private void showSessionQr() {
+        if (serverUrl == null) {
+            qrImageView.setImage(null);
+            urlLabel.setText(serverStarting ? "Starting server..." : "Server stopped");
+            return;
+        }
+        String sessionUrl = serverUrl + "/?session=" + currentSession;
+        try {
+            BufferedImage qrImage = QrCodes.generate(sessionUrl, QR_SIZE);
+            qrImageView.setImage(SwingFXUtils.toFXImage(qrImage, null));
+            urlLabel.setText(sessionUrl);
+        } catch (Exception e) {
+            qrImageView.setImage(null);
+            urlLabel.setText("QR Code generation failed");
+        }
+    }
 
-        BufferedImage image = new BufferedImage(QR_SIZE, QR_SIZE, BufferedImage.TYPE_INT_RGB);
-        for (int x = 0; x < QR_SIZE; x++) {
-            for (int y = 0; y < QR_SIZE; y++) {
-                image.setRGB(x, y, bitMatrix.get(x, y) ? Color.BLACK.getRGB() : Color.WHITE.getRGB());
-            }
+    private void refreshSessions() {
+        sessionList.getChildren().clear();
+        int waiting = 0;
+        for (IngestQueue.SessionCounts session : ingestQueue.sessions()) {
+            waiting += session.pending();
+            Label row = new Label(String.format("%s%s   %d pending · %d processing · %d done",
+                    session.session(), session.session().equals(currentSession) ? " (on screen)" : "",
+                    session.pending(), session.processing(), session.done()));
+            row.setStyle("""
+                -fx-font-size: 12px;
+                -fx-text-fill: #ced4da;
+                -fx-font-family: 'Courier New', monospace;
+                """);
+            sessionList.getChildren().add(row);
+        }
+        waitingLabel.setText(waiting == 0 ? "Waiting for image upload..." : waiting + " upload(s) waiting for analysis");
+        SpeculativeInferenceEngine.Stats speculation = app.getSpeculationStats();
+        if (speculation != null) {
+            waitingLabel.setText(waitingLabel.getText() + "\nAuto-analysis: " + speculation);
         }
-        return image;
+        goToRunPanelButton.setDisable(waiting == 0);
     }
 
     private void goToRunPanel() {
-        if (latestImage != null) {
-            String imagePath = saveImageLocally();
-            if (imagePath != null) {
-                app.showRunPanel(imagePath);
-                stopServer();
-            }
+        IngestQueue.Entry next;
+        try {
+            next = ingestQueue.take();
+        } catch (IOException e) {
+            System.err.println("Could not take the next upload: " + e.getMessage());
+            return;
+        }
+        if (next != null) {
+            app.showRunPanel(next.image().toString());
         }
     }
 
-    private String saveImageLocally() {
-        try {
-            File dir = new File("captured_images");
-            if (!dir.exists()) {
-                dir.mkdirs();
+    private void startLivePreview() {
+        previewRunning = true;
+        Thread decoder = new Thread(() -> {
+            long lastSequence = 0;
+            boolean streaming = false;
+            while (previewRunning) {
+                LiveFrames.Frame frame;
+                try {
+                    frame = liveFrames.awaitNewer(lastSequence, 1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (frame == null) {
+                    // Only while a stream is on screen: the last refresh hides it, then nothing until the next frame
+                    if (streaming) {
+                        streaming = liveFrames.latestAgeMillis() < LIVE_IDLE_MILLIS;
+                        Platform.runLater(this::refreshLiveStatus);
+                    }
+                    continue;
+                }
+                streaming = true;
+                lastSequence = frame.sequence();
+                // Decoded straight to preview size, off the FX thread
+                Image image = new Image(new ByteArrayInputStream(frame.jpeg()),
+                        liveView.getFitWidth(), liveView.getFitHeight(), true, true);
+                if (image.isError()) {
+                    continue;
+                }
+                if (pendingPreview.getAndSet(new LivePreview(frame, image)) != null) {
+                    // The FX thread had not shown the previous frame yet; it never will
+                    liveFrames.countDropped();
+                } else {
+                    Platform.runLater(this::showLivePreview);
+                }
             }
+        }, "live-preview");
+        decoder.setDaemon(true);
+        decoder.start();
+        previewThread = decoder;
+    }
 
-            String fileName = "captured_" + System.currentTimeMillis() + ".jpg";
-            File outputFile = new File(dir, fileName);
+    private void showLivePreview() {
+        LivePreview preview = pendingPreview.getAndSet(null);
+        if (preview == null) {
+            return;
+        }
+        displayedFrame = preview.frame();
+        liveView.setImage(preview.image());
+        refreshLiveStatus();
+    }
 
-            try (ByteArrayInputStream bis = new ByteArrayInputStream(latestImage);
-                 FileOutputStream fos = new FileOutputStream(outputFile)) {
+    private void refreshLiveStatus() {
+        boolean live = displayedFrame != null && displayedFrame.ageMillis() < LIVE_IDLE_MILLIS;
+        liveBox.setVisible(live);
+        stepsContainer.setVisible(!live);
+        if (live) {
+            liveLabel.setText("Live from " + displayedFrame.session() + ": " + liveFrames.stats());
+        }
+    }
 
-                BufferedImage bufferedImage = ImageIO.read(bis);
-                ImageIO.write(bufferedImage, "jpg", outputFile);
+    private void freezeFrame() {
+        LiveFrames.Frame frame = displayedFrame;
+        if (frame == null) {
+            return;
+        }
+        freezeButton.setDisable(true);
+        CompletableFuture.runAsync(() -> {
+            try {
+                CaptureStore.Commit saved = LiveFrames.save(frame, app.getCaptureStore());
+                MultipartStreamParser.UploadedFile upload = new MultipartStreamParser.UploadedFile(
+                        saved.file(), frame.jpeg().length, "live.jpg", "image/jpeg", saved.created());
+                try {
+                    accept(frame.session(), upload, frame.jpeg().length);
+                } catch (IOException | RuntimeException e) {
+                    upload.discard();
+                    throw e;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-
-            if (outputFile.exists() && outputFile.length() > 0) {
-                app.setCapturedImage(new Image(outputFile.toURI().toString()));
-                return outputFile.getAbsolutePath();
+        }).whenComplete((ignored, error) -> Platform.runLater(() -> {
+            freezeButton.setDisable(false);
+            if (error != null) {
+                System.err.println("Could not freeze live frame: " + error.getMessage());
+                liveLabel.setText("Could not save the frame");
             }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
+        }));
     }
 
+    /**
+     * Stops the server and the live preview; {@link #startServer} brings both back.
+     */
     public void stopServer() {
+        PhoneUploadServer unclaimed;
+        synchronized (this) {
+            stopRequested = true;
+            unclaimed = startedServer;
+            startedServer = null;
+        }
+        if (unclaimed != null) {
+            unclaimed.stop();
+        }
+        previewRunning = false;
+        if (previewThread != null) {
+            previewThread.interrupt();
+            previewThread = null;
+        }
         if (server != null) {
-            server.stop(0);
+            server.stop();
+            server = null;
+            serverUrl = null;
+            showSessionQr();
+            showServerState("● Server Stopped", "#adb5bd");
         }
     }
 
@@ -501,6 +826,7 @@ public class ScanFromPhonePanel extends HBox {
                     background: rgba(63, 81, 181, 0.1);
                 }
                 #preview { margin-top: 20px; text-align: center; }
+                #live { display: none; width: 100%; border-radius: 8px; margin-bottom: 15px; }
                 #preview img { 
                     max-width: 100%; 
                     max-height: 200px; 
@@ -526,6 +852,11 @@ public class ScanFromPhonePanel extends HBox {
                     Parkinson Detection - Photo Capture
                 </button>
                 
+                <button class="btn" id="liveButton" onclick="toggleLive()">
+                    Live Camera
+                </button>
+                <video id="live" playsinline muted></video>
+                
                 <div class="upload-area" onclick="document.getElementById('gallery').click()">
                     <div>Choose from Gallery</div>
                 </div>
@@ -539,6 +870,8 @@ public class ScanFromPhonePanel extends HBox {
         
             <script>
                 let selectedFile = null;
+                // Which phone session this page belongs to; it comes from the QR code's URL
+                const session = new URLSearchParams(location.search).get('session') || '';
                 
                 function openCamera() {
                     document.getElementById('camera').click();
@@ -547,48 +880,209 @@ public class ScanFromPhonePanel extends HBox {
                 document.getElementById('camera').onchange = handleFile;
                 document.getElementById('gallery').onchange = handleFile;
                 
-                function handleFile(e) {
+                // Defaults until /config answers; the server's values take over from then on
+                let captureConfig = { maxDimension: 1024, jpegQuality: 0.85, liveMaxDimension: 640, liveFps: 10 };
+                fetch('/config')
+                    .then(response => response.json())
+                    .then(config => { captureConfig = config; })
+                    .catch(() => {});
+                
+                async function handleFile(e) {
                     const file = e.target.files[0];
                     if (file && file.type.startsWith('image/')) {
-                        selectedFile = file;
-                        showPreview(file);
-                        uploadImage();
+                        showStatus('Preparing photo...', 'info');
+                        selectedFile = await shrink(file);
+                        showPreview(selectedFile);
+                        uploadImage(file.size);
+                    }
+                }
+                
+                // Draws the photo no larger than maxDimension on its longest side and re-encodes it
+                // as JPEG. Falls back to the original file if the browser cannot decode it or the
+                // result would not be smaller.
+                async function shrink(file) {
+                    try {
+                        const bitmap = await createImageBitmap(file, { imageOrientation: 'from-image' });
+                        const scale = Math.min(1, captureConfig.maxDimension / Math.max(bitmap.width, bitmap.height));
+                        const canvas = document.createElement('canvas');
+                        canvas.width = Math.round(bitmap.width * scale);
+                        canvas.height = Math.round(bitmap.height * scale);
+                        canvas.getContext('2d').drawImage(bitmap, 0, 0, canvas.width, canvas.height);
+                        bitmap.close();
+                        const blob = await new Promise(resolve =>
+                            canvas.toBlob(resolve, 'image/jpeg', captureConfig.jpegQuality));
+                        return blob && blob.size < file.size ? blob : file;
+                    } catch (error) {
+                        return file;
                     }
                 }
                 
                 function showPreview(file) {
-                    const reader = new FileReader();
-                    reader.onload = e => {
-                        document.getElementById('preview').innerHTML = 
-                            '<img src="' + e.target.result + '" alt="Preview">';
-                    };
-                    reader.readAsDataURL(file);
+                    const url = URL.createObjectURL(file);
+                    document.getElementById('preview').innerHTML = 
+                        '<img src="' + url + '" alt="Preview">';
+                    document.querySelector('#preview img').onload = () => URL.revokeObjectURL(url);
+                }
+                
+                // CRC-32 as in java.util.zip.CRC32; crypto.subtle is not available to a page served over http
+                const crcTable = new Uint32Array(256).map((_, n) => {
+                    let c = n;
+                    for (let k = 0; k < 8; k++) {
+                        c = c & 1 ? 0xEDB88320 ^ (c >>> 1) : c >>> 1;
+                    }
+                    return c;
+                });
+                
+                function crc32(bytes) {
+                    let crc = 0xFFFFFFFF;
+                    for (let i = 0; i < bytes.length; i++) {
+                        crc = crcTable[(crc ^ bytes[i]) & 0xFF] ^ (crc >>> 8);
+                    }
+                    return (crc ^ 0xFFFFFFFF) >>> 0;
+                }
+                
+                const MAX_ATTEMPTS = 8;
+                
+                async function request(method, url, options = {}) {
+                    const response = await fetch(url, Object.assign({ method: method }, options));
+                    const reply = await response.json().catch(() => ({}));
+                    if (!response.ok) {
+                        const error = new Error(reply.message || 'Upload failed');
+                        error.status = response.status;
+                        throw error;
+                    }
+                    return reply;
                 }
                 
-                async function uploadImage() {
+                function pause(failures) {
+                    return new Promise(resolve => setTimeout(resolve, Math.min(8000, 500 * 2 ** failures)));
+                }
+                
+                async function withRetries(action) {
+                    for (let failures = 1; ; failures++) {
+                        try {
+                            return await action();
+                        } catch (error) {
+                            // 503: the desktop is busy with other uploads, worth waiting for
+                            if ((error.status && error.status !== 503) || failures >= MAX_ATTEMPTS) throw error;
+                            await pause(failures);
+                        }
+                    }
+                }
+                
+                // Sends the file in chunks; after a failure it asks the server how far it got and
+                // carries on from there, so only the missing chunks cross the network again
+                async function uploadImage(originalSize) {
                     if (!selectedFile) return;
-                    
-                    showStatus('Uploading...', 'info');
-                    
-                    const formData = new FormData();
-                    formData.append('image', selectedFile);
+                    const file = selectedFile;
                     
                     try {
-                        const response = await fetch('/', {
-                            method: 'POST',
-                            body: formData
-                        });
+                        const query = 'session=' + encodeURIComponent(session) + '&size=' + file.size
+                            + '&original=' + originalSize
+                            + '&name=' + encodeURIComponent(file.name || 'photo.jpg')
+                            + '&type=' + encodeURIComponent(file.type || 'image/jpeg');
+                        const upload = await withRetries(() => request('POST', '/upload/start?' + query));
+                        const id = encodeURIComponent(upload.uploadId);
+                        let offset = upload.offset;
+                        let failures = 0;
                         
-                        if (response.ok) {
-                            showStatus('Upload successful!', 'success');
-                        } else {
-                            throw new Error('Upload failed');
+                        while (offset < file.size) {
+                            showStatus('Uploading... ' + Math.floor(100 * offset / file.size) + '%', 'info');
+                            try {
+                                const bytes = new Uint8Array(
+                                    await file.slice(offset, offset + upload.chunkSize).arrayBuffer());
+                                const reply = await request('PUT',
+                                    '/upload/chunk?id=' + id + '&index=' + (offset / upload.chunkSize), {
+                                        headers: { 'X-Chunk-Crc32': crc32(bytes).toString(16) },
+                                        body: bytes
+                                    });
+                                offset = reply.offset;
+                                failures = 0;
+                            } catch (error) {
+                                if (error.status === 404 || ++failures >= MAX_ATTEMPTS) throw error;
+                                showStatus('Connection problem, resuming...', 'info');
+                                await pause(failures);
+                                offset = await request('GET', '/upload/status?id=' + id)
+                                    .then(status => status.offset)
+                                    .catch(() => offset);
+                            }
                         }
+                        
+                        await withRetries(() => request('POST', '/upload/finish?id=' + id));
+                        showStatus('Upload successful!', 'success');
                     } catch (error) {
                         showStatus('Upload failed: ' + error.message, 'error');
                     }
                 }
                 
+                let liveStream = null;
+                
+                // getUserMedia only exists in secure contexts (https or localhost); phones opening
+                // this page over the LAN's plain http, without -Dparkinson.phone.https, do not get it
+                async function toggleLive() {
+                    if (liveStream) {
+                        stopLive();
+                        return;
+                    }
+                    if (!navigator.mediaDevices || !navigator.mediaDevices.getUserMedia) {
+                        showStatus('Live camera needs a secure (https) page in this browser; take a photo instead', 'error');
+                        return;
+                    }
+                    try {
+                        liveStream = await navigator.mediaDevices.getUserMedia(
+                            { video: { facingMode: 'environment' }, audio: false });
+                    } catch (error) {
+                        showStatus('Camera unavailable: ' + error.message, 'error');
+                        return;
+                    }
+                    const video = document.getElementById('live');
+                    video.srcObject = liveStream;
+                    video.style.display = 'block';
+                    await video.play();
+                    document.getElementById('liveButton').textContent = 'Stop Live Camera';
+                    streamFrames(video);
+                }
+                
+                function stopLive() {
+                    liveStream.getTracks().forEach(track => track.stop());
+                    liveStream = null;
+                    document.getElementById('live').style.display = 'none';
+                    document.getElementById('liveButton').textContent = 'Live Camera';
+                }
+                
+                // At most one frame in flight: a slow link or a busy desktop lowers the frame
+                // rate instead of piling frames up on either side
+                async function streamFrames(video) {
+                    const canvas = document.createElement('canvas');
+                    let sent = 0;
+                    let dropped = 0;
+                    while (liveStream) {
+                        const started = performance.now();
+                        if (video.videoWidth) {
+                            const scale = Math.min(1,
+                                captureConfig.liveMaxDimension / Math.max(video.videoWidth, video.videoHeight));
+                            canvas.width = Math.round(video.videoWidth * scale);
+                            canvas.height = Math.round(video.videoHeight * scale);
+                            canvas.getContext('2d').drawImage(video, 0, 0, canvas.width, canvas.height);
+                            const frame = await new Promise(resolve => canvas.toBlob(resolve, 'image/jpeg', 0.7));
+                            try {
+                                const response = await fetch('/live/frame?session=' + encodeURIComponent(session),
+                                    { method: 'POST', body: frame });
+                                if (response.ok) {
+                                    sent++;
+                                } else {
+                                    dropped++;
+                                }
+                            } catch (error) {
+                                dropped++;
+                            }
+                            showStatus('Live: ' + sent + ' frames sent' + (dropped ? ', ' + dropped + ' dropped' : ''), 'info');
+                        }
+                        const wait = 1000 / captureConfig.liveFps - (performance.now() - started);
+                        await new Promise(resolve => setTimeout(resolve, Math.max(0, wait)));
+                    }
+                }
+                
                 function showStatus(message, type) {
                     document.getElementById('status').innerHTML = 
                         '<div class="status ' + type + '">' + message + '</div>';
@@ -599,4 +1093,6 @@ public class ScanFromPhonePanel extends HBox {
         """;
     }
 
-}
\ No newline at end of file
+    private record LivePreview(LiveFrames.Frame frame, Image image) {
+    }
+}
@@ -101,7 +101,27 @@ public class ScanImagePanel extends ScrollPane {
                 e -> selectImage()
         );
 
-        cardsContainer.getChildren().addAll(phoneCard, uploadCard);
+        // Card 3: Analyse a whole folder
+        VBox folderCard = createCard(
+                "Analyse Folder",
+                "/scan.png",
+                "Screen every image in a folder at once. Images are analysed in batches and results stream into a sortable table.",
+                "Batch Analysis",
+                "#4dabf7", "#1c7ed6",
+                e -> app.showBatchAnalysisPanel()
+        );
+
+        // Card 4: Webcam
+        VBox webcamCard = createCard(
+                "Webcam",
+                "/scan.png",
+                "Capture straight from a webcam or document camera. The live view is analysed continuously; capture a frame to run the full analysis.",
+                "Open Webcam",
+                "#ffa94d", "#f76707",
+                e -> app.showWebcamPanel()
+        );
+
+        cardsContainer.getChildren().addAll(phoneCard, uploadCard, folderCard, webcamCard);
         return cardsContainer;
     }
 
@@ -0,0 +1,86 @@
+package com.parkinsongui.panels;
+
+import javafx.scene.image.Image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Decoded images kept in least-recently-used order, bounded by the memory their pixels take
+ * rather than by count: one large preview can push out dozens of small thumbnails.
+ */
+public class ThumbnailCache<K> {
+    private final long maxBytes;
+    private final LinkedHashMap<K, Image> images = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ThumbnailCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * What the decoded pixels hold on to: JavaFX keeps 4 bytes per pixel.
+     */
+    public static long sizeOf(Image image) {
+        return (long) Math.ceil(image.getWidth()) * (long) Math.ceil(image.getHeight()) * 4;
+    }
+
+    public synchronized Image get(K key) {
+        Image image = images.get(key);
+        if (image != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return image;
+    }
+
+    public synchronized void put(K key, Image image) {
+        Objects.requireNonNull(image);
+        long size = sizeOf(image);
+        if (size > maxBytes) {
+            // Would evict everything else and still not fit
+            return;
+        }
+        Image previous = images.put(key, image);
+        if (previous != null) {
+            bytes -= sizeOf(previous);
+        }
+        bytes += size;
+        Iterator<Map.Entry<K, Image>> eldest = images.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<K, Image> entry = eldest.next();
+            if (entry.getKey().equals(key)) {
+                continue;
+            }
+            bytes -= sizeOf(entry.getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void remove(K key) {
+        Image removed = images.remove(key);
+        if (removed != null) {
+            bytes -= sizeOf(removed);
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(images.size(), bytes, maxBytes, hits, misses, evictions);
+    }
+
+    public record Stats(int entries, long bytes, long maxBytes, long hits, long misses, long evictions) {
+
+        @Override
+        public String toString() {
+            return String.format("%d images, %.1f of %.0f MB, %d hits, %d misses, %d evicted",
+                    entries, bytes / (1024.0 * 1024), maxBytes / (1024.0 * 1024), hits, misses, evictions);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.parkinsongui.panels;
+
+import com.parkinsongui.App;
+import com.parkinsongui.camera.FrameAnalyzer;
+import com.parkinsongui.camera.FramePool;
+import com.parkinsongui.camera.WebcamFeed;
+import com.parkinsongui.history.CaptureStore;
+import com.parkinsongui.inference.PredictionResult;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+public class WebcamPanel extends VBox {
+    // Labels are rewritten at most this often, not once per frame
+    private static final long STATUS_INTERVAL_NANOS = 500_000_000L;
+
+    private App app;
+    private ImageView preview;
+    private Label statusLabel;
+    private Label predictionLabel;
+    private Button captureButton;
+    private Button goBackButton;
+
+    private WebcamFeed feed;
+    private FrameAnalyzer analyzer;
+    private WritableImage frameImage;
+    private PixelWriter pixelWriter;
+    // Bumped on every stop, so a camera that finishes opening after the user left is closed again
+    private int generation;
+    private long lastStatusNanos;
+
+    public WebcamPanel(App app) {
+        this.app = app;
+        initializeComponents();
+        setupLayout();
+        setupEventHandlers();
+    }
+
+    private void initializeComponents() {
+        preview = new ImageView();
+        preview.setFitWidth(480);
+        preview.setFitHeight(360);
+        preview.setPreserveRatio(true);
+
+        statusLabel = new Label("");
+        statusLabel.setStyle("-fx-font-size: 13px; -fx-text-fill: #ced4da;");
+
+        predictionLabel = new Label("");
+        predictionLabel.setStyle("-fx-font-size: 16px; -fx-font-weight: bold; -fx-text-fill: #e9ecef;");
+
+        String buttonStyle = "-fx-pref-height: 42; -fx-font-size: 14px; -fx-font-weight: bold; " +
+                "-fx-border-radius: 8; -fx-background-radius: 8; -fx-text-fill: white; " +
+                "-fx-effect: dropshadow(three-pass-box, rgba(0,0,0,0.3), 5, 0, 0, 2);";
+
+        captureButton = new Button("Capture & Analyse");
+        captureButton.setPrefWidth(200);
+        captureButton.setDisable(true);
+        captureButton.setStyle(buttonStyle +
+                "-fx-background-color: linear-gradient(to right, #28a745, #218838);");
+
+        goBackButton = new Button("Go Back");
+        goBackButton.setPrefWidth(150);
+        goBackButton.setStyle(buttonStyle +
+                "-fx-background-color: linear-gradient(to right, #6c757d, #495057);");
+    }
+
+    private void setupLayout() {
+        setAlignment(Pos.CENTER);
+        setSpacing(30);
+
+        VBox card = new VBox(20);
+        card.setAlignment(Pos.CENTER);
+        card.setPadding(new Insets(30));
+        card.setStyle(
+                "-fx-background-color: rgba(25, 25, 25, 1);" +
+                        "-fx-background-radius: 15;" +
+                        "-fx-border-radius: 15;" +
+                        "-fx-border-color: linear-gradient(to right, #6a11cb, #2575fc);" +
+                        "-fx-border-width: 2;" +
+                        "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.5), 15, 0, 0, 5);"
+        );
+
+        Label titleLabel = new Label("Webcam Capture");
+        titleLabel.setStyle("-fx-font-size: 24px; -fx-font-weight: bold; -fx-text-fill: white;");
+
+        HBox buttonBox = new HBox(15, goBackButton, captureButton);
+        buttonBox.setAlignment(Pos.CENTER);
+
+        card.getChildren().addAll(titleLabel, preview, predictionLabel, buttonBox, statusLabel);
+
+        setPadding(new Insets(20, 45, 20, 45));
+        getChildren().add(card);
+    }
+
+    private void setupEventHandlers() {
+        captureButton.setOnAction(e -> captureFrame());
+        goBackButton.setOnAction(e -> {
+            stopCamera();
+            app.showScanImagePanel();
+        });
+    }
+
+    public void startCamera() {
+        if (feed != null) {
+            return;
+        }
+        int opening = generation;
+        statusLabel.setText("Opening webcam...");
+        predictionLabel.setText("");
+        CompletableFuture.supplyAsync(WebcamFeed::open).whenComplete((opened, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                System.err.println("Could not open webcam: " + cause.getMessage());
+                statusLabel.setText("No webcam available: " + cause.getMessage());
+                return;
+            }
+            if (opening != generation || feed != null) {
+                CompletableFuture.runAsync(opened::stop);
+                return;
+            }
+            started(opened);
+        }));
+    }
+
+    private void started(WebcamFeed opened) {
+        feed = opened;
+        // One image for the whole session, redrawn in place for every frame
+        frameImage = new WritableImage(opened.getWidth(), opened.getHeight());
+        pixelWriter = frameImage.getPixelWriter();
+        preview.setImage(frameImage);
+
+        analyzer = new FrameAnalyzer(app.getFrameInferenceEngine(), Paths.get(App.WEBCAM_FRAME_PATH),
+                result -> Platform.runLater(() -> showPrediction(result)));
+        FrameAnalyzer frameAnalyzer = analyzer;
+        opened.start(new WebcamFeed.Listener() {
+            @Override
+            public void frameAvailable() {
+                Platform.runLater(() -> drawLatest(opened));
+            }
+
+            @Override
+            public void onFrame(FramePool.Frame frame) {
+                frameAnalyzer.offer(frame);
+            }
+        });
+        captureButton.setDisable(false);
+        statusLabel.setText("Webcam: " + opened.getName());
+    }
+
+    private void drawLatest(WebcamFeed source) {
+        FramePool.Frame frame = source.takeLatest();
+        if (frame == null) {
+            return;
+        }
+        try {
+            if (source == feed) {
+                ByteBuffer pixels = frame.rgb();
+                pixelWriter.setPixels(0, 0, frame.getWidth(), frame.getHeight(),
+                        PixelFormat.getByteRgbInstance(), pixels, frame.getWidth() * 3);
+            }
+        } finally {
+            source.release(frame);
+        }
+        long now = System.nanoTime();
+        if (source == feed && now - lastStatusNanos > STATUS_INTERVAL_NANOS) {
+            lastStatusNanos = now;
+            statusLabel.setText(String.format(Locale.ROOT, "%s: %s, %d analysed, %d skipped while busy",
+                    source.getName(), source.stats(), analyzer.getAnalysed(), analyzer.getSkipped()));
+        }
+    }
+
+    private void showPrediction(PredictionResult result) {
+        if (feed == null) {
+            return;
+        }
+        predictionLabel.setText(String.format(Locale.ROOT, "%s (%.1f%%)", result.result(), result.confidenceScore()));
+    }
+
+    private void captureFrame() {
+        if (feed == null) {
+            return;
+        }
+        captureButton.setDisable(true);
+        feed.snapshot().thenApplyAsync(image -> save(image, app.getCaptureStore())).whenComplete((saved, error) -> Platform.runLater(() -> {
+            captureButton.setDisable(feed == null);
+            if (error != null) {
+                System.err.println("Could not capture webcam frame: " + error.getMessage());
+                statusLabel.setText("Capture failed: " + error.getMessage());
+                return;
+            }
+            stopCamera();
+            app.showRunPanel(saved.toString());
+        }));
+    }
+
+    // Written to the capture store, complete or not at all
+    private static Path save(BufferedImage image, CaptureStore store) {
+        try {
+            Path partial = Files.createTempFile(store.getDirectory(), ".webcam-", ".part");
+            try {
+                if (!ImageIO.write(image, "jpg", partial.toFile())) {
+                    throw new IOException("No JPEG writer available");
+                }
+                return store.commit(partial, ".jpg").file();
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(partial);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void stopCamera() {
+        generation++;
+        captureButton.setDisable(true);
+        if (analyzer != null) {
+            analyzer.stop();
+            analyzer = null;
+        }
+        if (feed != null) {
+            WebcamFeed stopping = feed;
+            feed = null;
+            // Joining the capture thread and closing the device can take a moment
+            CompletableFuture.runAsync(stopping::stop);
+        }
+    }
+}
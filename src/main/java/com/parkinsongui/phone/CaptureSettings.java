@@ -0,0 +1,33 @@
+package com.parkinsongui.phone;
+
+import java.util.Locale;
+
+/**
+ * How the capture page shrinks a photo before uploading it, and how it streams live frames,
+ * served to the phones as JSON from /config. The model only sees 224x224, so anything much
+ * larger than the longest side configured here is wasted Wi-Fi time.
+ */
+public record CaptureSettings(int maxDimension, int jpegQuality, int liveMaxDimension, int liveFps) {
+    public static final String MAX_DIMENSION_PROPERTY = "parkinson.phone.maxDimension";
+    public static final String JPEG_QUALITY_PROPERTY = "parkinson.phone.jpegQuality";
+    public static final String LIVE_MAX_DIMENSION_PROPERTY = "parkinson.phone.liveMaxDimension";
+    public static final String LIVE_FPS_PROPERTY = "parkinson.phone.liveFps";
+
+    private static final int DEFAULT_MAX_DIMENSION = 1024;
+    private static final int DEFAULT_JPEG_QUALITY = 85;
+    private static final int DEFAULT_LIVE_MAX_DIMENSION = 640;
+    private static final int DEFAULT_LIVE_FPS = 10;
+
+    public static CaptureSettings fromSystemProperties() {
+        return new CaptureSettings(
+                PhoneUploadServer.intProperty(MAX_DIMENSION_PROPERTY, DEFAULT_MAX_DIMENSION),
+                Math.min(100, PhoneUploadServer.intProperty(JPEG_QUALITY_PROPERTY, DEFAULT_JPEG_QUALITY)),
+                PhoneUploadServer.intProperty(LIVE_MAX_DIMENSION_PROPERTY, DEFAULT_LIVE_MAX_DIMENSION),
+                Math.min(30, PhoneUploadServer.intProperty(LIVE_FPS_PROPERTY, DEFAULT_LIVE_FPS)));
+    }
+
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"maxDimension\":%d,\"jpegQuality\":%.2f,\"liveMaxDimension\":%d,\"liveFps\":%d}",
+                maxDimension, jpegQuality / 100.0, liveMaxDimension, liveFps);
+    }
+}
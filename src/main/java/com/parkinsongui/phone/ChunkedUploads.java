@@ -0,0 +1,397 @@
+package com.parkinsongui.phone;
+
+import com.parkinsongui.history.CaptureStore;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Resumable uploads in fixed-size chunks, so a dropped connection only costs the chunks
+ * that did not arrive.
+ *
+ * <pre>
+ * POST /upload/start?session=&amp;size=&amp;original=&amp;name=&amp;type=  -> {"uploadId", "chunkSize", "offset"}
+ * PUT  /upload/chunk?id=&amp;index=   X-Chunk-Crc32: hex         -> {"offset"}
+ * GET  /upload/status?id=                                     -> {"offset", "size"}
+ * POST /upload/finish?id=                                     -> {"status"}
+ * </pre>
+ *
+ * "offset" is the number of bytes acknowledged without a gap, where the page resumes.
+ * Chunks are written in place into a file sized up front under ".uploads", and the file is
+ * moved to its final name only once every chunk has arrived and passed its CRC-32 check.
+ * Every write to and the closing of an upload's file happen under the upload's lock, and a
+ * file stays open until it has been moved, so a finish that failed can be retried.
+ *
+ * Each upload in progress reserves disk space for its full size, so only
+ * {@value #MAX_ACTIVE_UPLOADS} may be in progress at once; a further start is answered 503
+ * and the page tries again. The page starts a new upload after a failure, so one that has not
+ * been heard from for a couple of minutes is given up and its place freed, checked every
+ * half minute and before each start. Finished uploads are remembered longer, to answer a
+ * retried finish.
+ */
+public class ChunkedUploads {
+    public static final int CHUNK_SIZE = 256 * 1024;
+    public static final int MAX_ACTIVE_UPLOADS = 8;
+
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final long STALE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final long FINISHED_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final long SWEEP_INTERVAL_SECONDS = 30;
+    // A chunk that trickles in slower than this is cut off; the page retries it
+    private static final long CHUNK_TIMEOUT_SECONDS = 20;
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "upload-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CaptureStore store;
+    private final IngestQueue queue;
+    private final Path partialDirectory;
+    private final long maxFileBytes;
+    private final Listener listener;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private final Semaphore activeUploads = new Semaphore(MAX_ACTIVE_UPLOADS);
+    // Runs only while there are uploads to expire; guarded by this
+    private ScheduledFuture<?> sweep;
+
+    /**
+     * Receives each upload once it has been finalized; if it throws, the phone is told the
+     * upload failed and the file is {@link MultipartStreamParser.UploadedFile#discard discarded}.
+     */
+    public interface Listener {
+        void uploaded(String session, MultipartStreamParser.UploadedFile file, long originalSize) throws IOException;
+    }
+
+    public ChunkedUploads(CaptureStore store, IngestQueue queue, long maxFileBytes, Listener listener) throws IOException {
+        this.store = store;
+        this.queue = queue;
+        this.partialDirectory = store.getDirectory().resolve(".uploads");
+        this.maxFileBytes = maxFileBytes;
+        this.listener = listener;
+        Files.createDirectories(partialDirectory);
+        // Upload state lives in memory, so anything left from an earlier run cannot be resumed
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(partialDirectory, "*" + PARTIAL_SUFFIX)) {
+            for (Path leftover : leftovers) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+    }
+
+    public void register(PhoneUploadServer server) {
+        server.createContext("/upload/start", handler("POST", this::start));
+        server.createContext("/upload/chunk", handler("PUT", this::chunk));
+        server.createContext("/upload/status", handler("GET", this::status));
+        server.createContext("/upload/finish", handler("POST", this::finish));
+    }
+
+    private interface Endpoint {
+        String handle(HttpExchange exchange) throws IOException;
+    }
+
+    private static HttpHandler handler(String method, Endpoint endpoint) {
+        return exchange -> {
+            if (!method.equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", method);
+                exchange.sendResponseHeaders(405, -1);
+                exchange.close();
+                return;
+            }
+            try {
+                PhoneUploadServer.sendJson(exchange, 200, endpoint.handle(exchange));
+            } catch (UnknownUploadException e) {
+                PhoneUploadServer.sendJson(exchange, 404, PhoneUploadServer.errorJson(e.getMessage()));
+            } catch (BusyException e) {
+                exchange.getResponseHeaders().set("Retry-After", "2");
+                PhoneUploadServer.sendJson(exchange, 503, PhoneUploadServer.errorJson(e.getMessage()));
+            } catch (IllegalArgumentException e) {
+                PhoneUploadServer.sendJson(exchange, 400, PhoneUploadServer.errorJson(e.getMessage()));
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Chunked upload failed: " + e.getMessage());
+                PhoneUploadServer.sendJson(exchange, 500, PhoneUploadServer.errorJson("Upload failed"));
+            }
+        };
+    }
+
+    private String start(HttpExchange exchange) throws IOException {
+        String session = PhoneUploadServer.queryParameter(exchange, "session");
+        if (!queue.isOpen(session)) {
+            throw new IllegalArgumentException("Unknown session, scan the QR code again");
+        }
+        long size = longParameter(exchange, "size");
+        if (size <= 0 || size > maxFileBytes) {
+            throw new IllegalArgumentException("Upload must be between 1 byte and " + maxFileBytes / (1024 * 1024) + " MB");
+        }
+        String original = PhoneUploadServer.queryParameter(exchange, "original");
+        String name = PhoneUploadServer.queryParameter(exchange, "name");
+        String type = PhoneUploadServer.queryParameter(exchange, "type");
+
+        long originalSize = original == null ? 0 : parseLong(original, "original");
+
+        // Frees the places of uploads given up since the last sweep
+        expireIdle();
+        if (!activeUploads.tryAcquire()) {
+            throw new BusyException("Too many uploads in progress, try again shortly");
+        }
+        byte[] idBytes = new byte[8];
+        random.nextBytes(idBytes);
+        String id = HexFormat.of().formatHex(idBytes);
+        Path partial = partialDirectory.resolve(id + PARTIAL_SUFFIX);
+        try {
+            try (RandomAccessFile file = new RandomAccessFile(partial.toFile(), "rw")) {
+                // Sized up front so every chunk is a positional write into the final layout
+                file.setLength(size);
+            }
+            Upload upload = new Upload(id, session, size, originalSize, name == null ? "photo.jpg" : name, type, partial);
+            uploads.put(id, upload);
+            scheduleSweep();
+        } catch (IOException | RuntimeException e) {
+            activeUploads.release();
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        return "{\"uploadId\":\"" + id + "\",\"chunkSize\":" + CHUNK_SIZE + ",\"offset\":0}";
+    }
+
+    private String chunk(HttpExchange exchange) throws IOException {
+        Upload upload = upload(exchange);
+        if (upload.finished != null) {
+            return "{\"offset\":" + upload.size + "}";
+        }
+        long index = longParameter(exchange, "index");
+        if (index < 0 || index >= upload.chunkCount) {
+            throw new IllegalArgumentException("Chunk index out of range: " + index);
+        }
+        String checksum = exchange.getRequestHeaders().getFirst("X-Chunk-Crc32");
+        if (checksum == null) {
+            throw new IllegalArgumentException("Missing X-Chunk-Crc32 header");
+        }
+
+        long position = index * CHUNK_SIZE;
+        int expected = (int) Math.min(CHUNK_SIZE, upload.size - position);
+        byte[] data;
+        ScheduledFuture<?> timeout = WATCHDOG.schedule(exchange::close, CHUNK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        try (InputStream body = exchange.getRequestBody()) {
+            // One byte more than allowed, to tell an oversized chunk from an exact one
+            data = body.readNBytes(expected + 1);
+        } finally {
+            timeout.cancel(false);
+        }
+        if (data.length != expected) {
+            throw new IllegalArgumentException("Chunk " + index + " has " + data.length + " bytes, expected " + expected);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if (crc.getValue() != parseCrc(checksum)) {
+            throw new IllegalArgumentException("Checksum mismatch in chunk " + index);
+        }
+
+        // Read without the lock, as the body may trickle in; written under it, so a finish or an
+        // expiry cannot close the file halfway through
+        synchronized (upload) {
+            if (upload.finished != null) {
+                return "{\"offset\":" + upload.size + "}";
+            }
+            if (upload.closed) {
+                throw new UnknownUploadException("Unknown or expired upload: " + upload.id);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                upload.channel.write(buffer, position + buffer.position());
+            }
+            return "{\"offset\":" + upload.acknowledge((int) index) + "}";
+        }
+    }
+
+    private String status(HttpExchange exchange) throws IOException {
+        Upload upload = upload(exchange);
+        return "{\"offset\":" + upload.offset() + ",\"size\":" + upload.size + "}";
+    }
+
+    private String finish(HttpExchange exchange) throws IOException {
+        Upload upload = upload(exchange);
+        synchronized (upload) {
+            // A retried finish whose first reply was lost must not queue the image twice
+            if (upload.finished == null) {
+                if (upload.closed) {
+                    throw new UnknownUploadException("Unknown or expired upload: " + upload.id);
+                }
+                if (upload.offset() < upload.size) {
+                    throw new IllegalArgumentException("Upload incomplete: " + upload.offset() + " of " + upload.size + " bytes");
+                }
+                upload.channel.force(true);
+                // If this fails the file is still open and in place, and the finish can be retried
+                CaptureStore.Commit target = store.commit(upload.partial,
+                        MultipartStreamParser.extensionFor(upload.fileName, upload.contentType));
+                close(upload);
+                MultipartStreamParser.UploadedFile file = new MultipartStreamParser.UploadedFile(
+                        target.file(), upload.size, upload.fileName, upload.contentType, target.created());
+                try {
+                    listener.uploaded(upload.session, file, upload.originalSize);
+                } catch (IOException | RuntimeException e) {
+                    uploads.remove(upload.id);
+                    file.discard();
+                    throw e;
+                }
+                upload.finished = file;
+            }
+            upload.touch();
+        }
+        return "{\"status\":\"success\",\"message\":\"Image uploaded successfully\"}";
+    }
+
+    private Upload upload(HttpExchange exchange) throws UnknownUploadException {
+        String id = PhoneUploadServer.queryParameter(exchange, "id");
+        Upload upload = id == null ? null : uploads.get(id);
+        if (upload == null) {
+            throw new UnknownUploadException("Unknown or expired upload: " + id);
+        }
+        upload.touch();
+        return upload;
+    }
+
+    private synchronized void scheduleSweep() {
+        if (sweep == null) {
+            sweep = WATCHDOG.scheduleWithFixedDelay(this::sweep,
+                    SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void sweep() {
+        expireIdle();
+        synchronized (this) {
+            if (uploads.isEmpty() && sweep != null) {
+                sweep.cancel(false);
+                sweep = null;
+            }
+        }
+    }
+
+    private void expireIdle() {
+        long now = System.currentTimeMillis();
+        uploads.values().removeIf(upload -> {
+            long timeout = upload.finished == null ? STALE_TIMEOUT_MILLIS : FINISHED_TIMEOUT_MILLIS;
+            if (now - upload.lastActivity < timeout) {
+                return false;
+            }
+            synchronized (upload) {
+                if (!upload.closed) {
+                    try {
+                        close(upload);
+                        Files.deleteIfExists(upload.partial);
+                    } catch (IOException e) {
+                        System.err.println("Could not remove abandoned upload " + upload.id + ": " + e.getMessage());
+                    }
+                }
+            }
+            return true;
+        });
+    }
+
+    // Called with the upload's lock held; frees its place among the active uploads exactly once
+    private void close(Upload upload) throws IOException {
+        if (upload.closed) {
+            return;
+        }
+        upload.closed = true;
+        activeUploads.release();
+        upload.channel.close();
+    }
+
+    private static long longParameter(HttpExchange exchange, String name) {
+        return parseLong(PhoneUploadServer.queryParameter(exchange, name), name);
+    }
+
+    private static long parseLong(String value, String name) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Missing or invalid " + name);
+        }
+    }
+
+    private static long parseCrc(String checksum) {
+        try {
+            return Long.parseLong(checksum.trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid X-Chunk-Crc32 header");
+        }
+    }
+
+    private static class UnknownUploadException extends IOException {
+        UnknownUploadException(String message) {
+            super(message);
+        }
+    }
+
+    private static class BusyException extends IOException {
+        BusyException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Upload {
+        final String id;
+        final String session;
+        final long size;
+        final long originalSize;
+        final String fileName;
+        final String contentType;
+        final Path partial;
+        final FileChannel channel;
+        final int chunkCount;
+        final BitSet received;
+        // Guarded by the upload's lock, like every use of the channel
+        boolean closed;
+        volatile long lastActivity = System.currentTimeMillis();
+        volatile MultipartStreamParser.UploadedFile finished;
+
+        Upload(String id, String session, long size, long originalSize, String fileName, String contentType,
+                Path partial) throws IOException {
+            this.id = id;
+            this.session = session;
+            this.size = size;
+            this.originalSize = originalSize;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.partial = partial;
+            this.channel = FileChannel.open(partial, StandardOpenOption.WRITE);
+            this.chunkCount = (int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            this.received = new BitSet(chunkCount);
+        }
+
+        synchronized long acknowledge(int index) {
+            received.set(index);
+            return offset();
+        }
+
+        synchronized long offset() {
+            return Math.min(size, (long) received.nextClearBit(0) * CHUNK_SIZE);
+        }
+
+        void touch() {
+            lastActivity = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.parkinsongui.phone;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Uploads from all phone sessions, waiting to be analysed in the order they arrived.
+ *
+ * Each entry is a one-line file "&lt;sequence&gt;.pending" in the queue directory, written to a
+ * temporary name, synced and then renamed, so an entry either exists completely or not at
+ * all. Taking an entry renames it to ".processing"; completing it deletes it, and releasing
+ * it (the analysis failed or was abandoned) renames it back to pending in its old place.
+ * Entries that were still processing when the application stopped go back to pending on the
+ * next start. Done counts are kept since the application started.
+ *
+ * Uploads are only accepted for sessions opened since the application started; the id in a
+ * QR code from an earlier run, or one made up, is turned away.
+ */
+public class IngestQueue {
+    private static final String PENDING = ".pending";
+    private static final String PROCESSING = ".processing";
+    private static final String TEMPORARY = ".tmp";
+    private static final Pattern SESSION_ID = Pattern.compile("[a-z0-9]{6}");
+    private static final char[] SESSION_ALPHABET = "abcdefghijkmnpqrstuvwxyz23456789".toCharArray();
+
+    private final Path directory;
+    private final SecureRandom random = new SecureRandom();
+    private final TreeMap<Long, Entry> pending = new TreeMap<>();
+    private final Map<Long, Entry> processing = new HashMap<>();
+    private final Map<String, Counts> sessions = new LinkedHashMap<>();
+    private final Set<String> openSessions = new HashSet<>();
+    private long nextSequence = 1;
+    private volatile Runnable listener = () -> { };
+
+    public IngestQueue(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    private static boolean isValidSessionId(String id) {
+        return id != null && SESSION_ID.matcher(id).matches();
+    }
+
+    /**
+     * Whether uploads for this session id are accepted, i.e. it was handed out by
+     * {@link #openSession} since the application started.
+     */
+    public synchronized boolean isOpen(String session) {
+        return session != null && openSessions.contains(session);
+    }
+
+    /**
+     * Called, on an arbitrary thread, after every change to the queue or the sessions.
+     */
+    public void setListener(Runnable listener) {
+        this.listener = listener != null ? listener : () -> { };
+    }
+
+    public String openSession() {
+        String id;
+        synchronized (this) {
+            do {
+                StringBuilder builder = new StringBuilder();
+                for (int i = 0; i < 6; i++) {
+                    builder.append(SESSION_ALPHABET[random.nextInt(SESSION_ALPHABET.length)]);
+                }
+                id = builder.toString();
+            } while (sessions.containsKey(id));
+            sessions.put(id, new Counts());
+            openSessions.add(id);
+        }
+        listener.run();
+        return id;
+    }
+
+    /**
+     * Appends an uploaded image; once this returns the entry survives a crash or restart.
+     */
+    public Entry add(String session, Path image) throws IOException {
+        Entry entry;
+        synchronized (this) {
+            if (!openSessions.contains(session)) {
+                throw new IllegalArgumentException("Unknown session id: " + session);
+            }
+            entry = new Entry(nextSequence++, session, image.toAbsolutePath(), System.currentTimeMillis());
+            write(entry);
+            pending.put(entry.sequence(), entry);
+            counts(session).pending++;
+        }
+        listener.run();
+        return entry;
+    }
+
+    /**
+     * Moves the oldest pending entry to processing and returns it, or null if nothing is waiting.
+     */
+    public Entry take() throws IOException {
+        Entry entry;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return null;
+            }
+            entry = pending.firstEntry().getValue();
+            Files.move(file(entry.sequence(), PENDING), file(entry.sequence(), PROCESSING), StandardCopyOption.ATOMIC_MOVE);
+            pending.remove(entry.sequence());
+            processing.put(entry.sequence(), entry);
+            Counts counts = counts(entry.session());
+            counts.pending--;
+            counts.processing++;
+        }
+        listener.run();
+        return entry;
+    }
+
+    /**
+     * Marks the entry for this image as done, whether it was taken or is still waiting (it
+     * was analysed some other way, or again after a failed try). Images that did not come
+     * through the queue are ignored.
+     */
+    public void complete(Path image) {
+        Path absolute = image.toAbsolutePath();
+        synchronized (this) {
+            Entry entry = find(processing, absolute);
+            boolean taken = entry != null;
+            if (!taken) {
+                entry = find(pending, absolute);
+                if (entry == null) {
+                    return;
+                }
+            }
+            try {
+                Files.deleteIfExists(file(entry.sequence(), taken ? PROCESSING : PENDING));
+            } catch (IOException e) {
+                System.err.println("Could not remove ingest entry " + entry.sequence() + ": " + e.getMessage());
+            }
+            Counts counts = counts(entry.session());
+            if (taken) {
+                processing.remove(entry.sequence());
+                counts.processing--;
+            } else {
+                pending.remove(entry.sequence());
+                counts.pending--;
+            }
+            counts.done++;
+        }
+        listener.run();
+    }
+
+    /**
+     * Puts the processing entry for this image back in the queue, ahead of anything that
+     * arrived after it, because its analysis failed or was abandoned. Anything else is ignored.
+     */
+    public void release(Path image) {
+        Path absolute = image.toAbsolutePath();
+        synchronized (this) {
+            Entry entry = find(processing, absolute);
+            if (entry == null) {
+                return;
+            }
+            try {
+                Files.move(file(entry.sequence(), PROCESSING), file(entry.sequence(), PENDING),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // Left as processing, on disk and here; the next start puts it back
+                System.err.println("Could not requeue ingest entry " + entry.sequence() + ": " + e.getMessage());
+                return;
+            }
+            processing.remove(entry.sequence());
+            pending.put(entry.sequence(), entry);
+            Counts counts = counts(entry.session());
+            counts.processing--;
+            counts.pending++;
+        }
+        listener.run();
+    }
+
+    private static Entry find(Map<Long, Entry> entries, Path image) {
+        return entries.values().stream()
+                .filter(candidate -> candidate.image().equals(image))
+                .findFirst().orElse(null);
+    }
+
+    public synchronized List<Entry> pending() {
+        return List.copyOf(pending.values());
+    }
+
+    /**
+     * Every image still waiting for or in analysis.
+     */
+    public synchronized Set<Path> images() {
+        Set<Path> images = new HashSet<>();
+        pending.values().forEach(entry -> images.add(entry.image()));
+        processing.values().forEach(entry -> images.add(entry.image()));
+        return images;
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    public synchronized List<SessionCounts> sessions() {
+        List<SessionCounts> snapshot = new ArrayList<>(sessions.size());
+        sessions.forEach((id, counts) -> snapshot.add(
+                new SessionCounts(id, counts.pending, counts.processing, counts.done)));
+        return snapshot;
+    }
+
+    private Counts counts(String session) {
+        return sessions.computeIfAbsent(session, id -> new Counts());
+    }
+
+    private void write(Entry entry) throws IOException {
+        String line = entry.session() + '\t' + entry.receivedMillis() + '\t' + entry.image() + '\n';
+        Path temporary = file(entry.sequence(), TEMPORARY);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file(entry.sequence(), PENDING), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path file(long sequence, String suffix) {
+        return directory.resolve(String.format("%012d", sequence) + suffix);
+    }
+
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int dot = name.indexOf('.');
+                String suffix = dot >= 0 ? name.substring(dot) : "";
+                if (suffix.equals(TEMPORARY)) {
+                    // Never renamed into place, so the upload was never acknowledged
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                if (!suffix.equals(PENDING) && !suffix.equals(PROCESSING)) {
+                    continue;
+                }
+                Entry entry = read(file, name.substring(0, dot));
+                if (entry == null || !Files.exists(entry.image())) {
+                    System.err.println("Dropping ingest entry " + name + ": image missing or entry unreadable");
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                if (suffix.equals(PROCESSING)) {
+                    Files.move(file, file(entry.sequence(), PENDING), StandardCopyOption.ATOMIC_MOVE);
+                }
+                pending.put(entry.sequence(), entry);
+                counts(entry.session()).pending++;
+                nextSequence = Math.max(nextSequence, entry.sequence() + 1);
+            }
+        }
+        if (!pending.isEmpty()) {
+            System.out.println("Ingest queue: " + pending.size() + " upload(s) waiting from an earlier session");
+        }
+    }
+
+    private static Entry read(Path file, String sequence) {
+        try {
+            String[] fields = Files.readString(file, StandardCharsets.UTF_8).strip().split("\t", 3);
+            if (fields.length < 3 || !isValidSessionId(fields[0])) {
+                return null;
+            }
+            return new Entry(Long.parseLong(sequence), fields[0], Paths.get(fields[2]), Long.parseLong(fields[1]));
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public record Entry(long sequence, String session, Path image, long receivedMillis) {
+    }
+
+    public record SessionCounts(String session, int pending, int processing, int done) {
+    }
+
+    private static class Counts {
+        int pending;
+        int processing;
+        int done;
+    }
+}
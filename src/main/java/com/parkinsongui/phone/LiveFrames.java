@@ -0,0 +1,190 @@
+package com.parkinsongui.phone;
+
+import com.parkinsongui.history.CaptureStore;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Live camera frames streamed from the capture page, one JPEG per POST to /live/frame.
+ *
+ * Only the newest frame is kept: a frame that is replaced before the preview took it is
+ * counted as dropped, never queued. Frame bodies have a size cap and only a few may be read
+ * at once, so memory stays bounded no matter how fast the phones send or how slowly the
+ * desktop keeps up. The page waits for each reply before sending the next frame, which
+ * slows a phone down to what the link and the server can take.
+ */
+public class LiveFrames {
+    public static final int MAX_FRAME_BYTES = 1024 * 1024;
+
+    private static final int MAX_FRAMES_IN_FLIGHT = 4;
+    // Frames per second are smoothed over roughly this many frames
+    private static final double FPS_SMOOTHING = 0.1;
+
+    private final IngestQueue queue;
+    private final Semaphore inFlight = new Semaphore(MAX_FRAMES_IN_FLIGHT);
+    private Frame latest;
+    private boolean latestTaken = true;
+    private long nextSequence = 1;
+    private long received;
+    private long dropped;
+    private long rejected;
+    private double fps;
+
+    public LiveFrames(IngestQueue queue) {
+        this.queue = queue;
+    }
+
+    public void register(PhoneUploadServer server) {
+        server.createContext("/live/frame", this::handleFrame);
+    }
+
+    private void handleFrame(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+        String session = PhoneUploadServer.queryParameter(exchange, "session");
+        if (!queue.isOpen(session)) {
+            PhoneUploadServer.sendJson(exchange, 400, PhoneUploadServer.errorJson("Unknown session, scan the QR code again"));
+            return;
+        }
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length == null || parseLength(length) > MAX_FRAME_BYTES) {
+            reject();
+            PhoneUploadServer.sendJson(exchange, 413, PhoneUploadServer.errorJson("Frame too large"));
+            return;
+        }
+        if (!inFlight.tryAcquire()) {
+            // Busy: the frame is dropped here rather than buffered
+            reject();
+            PhoneUploadServer.sendJson(exchange, 503, PhoneUploadServer.errorJson("Busy, frame dropped"));
+            return;
+        }
+        try {
+            byte[] jpeg;
+            try (InputStream body = exchange.getRequestBody()) {
+                jpeg = body.readNBytes(MAX_FRAME_BYTES + 1);
+            }
+            if (jpeg.length == 0 || jpeg.length > MAX_FRAME_BYTES) {
+                reject();
+                PhoneUploadServer.sendJson(exchange, 413, PhoneUploadServer.errorJson("Frame too large"));
+                return;
+            }
+            offer(session, jpeg);
+        } finally {
+            inFlight.release();
+        }
+        PhoneUploadServer.sendJson(exchange, 200, "{\"status\":\"ok\"}");
+    }
+
+    private static long parseLength(String length) {
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private synchronized void reject() {
+        rejected++;
+    }
+
+    synchronized void offer(String session, byte[] jpeg) {
+        long now = System.nanoTime();
+        if (latest != null) {
+            if (!latestTaken) {
+                dropped++;
+            }
+            double interval = (now - latest.receivedNanos()) / 1e9;
+            if (interval > 0) {
+                fps = fps == 0 ? 1 / interval : fps + FPS_SMOOTHING * (1 / interval - fps);
+            }
+        }
+        received++;
+        latest = new Frame(nextSequence++, session, jpeg, now);
+        latestTaken = false;
+        notifyAll();
+    }
+
+    /**
+     * Waits up to the timeout for a frame newer than the given sequence number and returns
+     * the newest one, or null if none came in.
+     */
+    public synchronized Frame awaitNewer(long afterSequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (latest == null || latest.sequence() <= afterSequence) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return null;
+            }
+            wait(remaining);
+        }
+        latestTaken = true;
+        return latest;
+    }
+
+    /**
+     * Counts a frame that was taken but replaced before it reached the screen.
+     */
+    public synchronized void countDropped() {
+        dropped++;
+    }
+
+    /**
+     * How long ago the newest frame came in; infinite before the first one.
+     */
+    public synchronized double latestAgeMillis() {
+        return latest == null ? Double.POSITIVE_INFINITY : latest.ageMillis();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(received, dropped, rejected, fps);
+    }
+
+    /**
+     * Writes a frozen frame to the capture store, complete or not at all.
+     */
+    public static CaptureStore.Commit save(Frame frame, CaptureStore store) throws IOException {
+        Path partial = Files.createTempFile(store.getDirectory(), ".frame-", ".part");
+        try {
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                ByteBuffer bytes = ByteBuffer.wrap(frame.jpeg());
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(true);
+            }
+            return store.commit(partial, ".jpg");
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+    }
+
+    public record Frame(long sequence, String session, byte[] jpeg, long receivedNanos) {
+
+        public double ageMillis() {
+            return (System.nanoTime() - receivedNanos) / 1_000_000.0;
+        }
+    }
+
+    public record Stats(long received, long dropped, long rejected, double fps) {
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.1f fps, %d received, %d dropped, %d rejected",
+                    fps, received, dropped, rejected);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.parkinsongui.phone;
+
+import com.parkinsongui.history.CaptureStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Reads a multipart/form-data body in fixed-size chunks and streams the first file part
+ * straight into a FileChannel, so an upload never costs more heap than one buffer,
+ * whatever the size of the photo. Boundaries are matched on raw bytes, so binary data
+ * and non-ASCII file names pass through untouched.
+ */
+public class MultipartStreamParser {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+    private static final String DEFAULT_EXTENSION = ".jpg";
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final long maxFileBytes;
+    private int start;
+    private int end;
+    private boolean eof;
+
+    public MultipartStreamParser(InputStream in, String boundary, long maxFileBytes) {
+        this.in = in;
+        this.maxFileBytes = maxFileBytes;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        if (delimiter.length + HEADER_END.length > BUFFER_SIZE) {
+            throw new IllegalArgumentException("Multipart boundary too long");
+        }
+        // The first boundary has no CRLF in front of it; pretend it does so every delimiter looks the same
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        end = 2;
+    }
+
+    /**
+     * The boundary parameter of a multipart Content-Type header, or null if there is none.
+     */
+    public static String boundaryOf(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/")) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.toLowerCase(Locale.ROOT).startsWith("boundary=")) {
+                String boundary = trimmed.substring("boundary=".length());
+                if (boundary.length() >= 2 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                return boundary.isEmpty() ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the first part that carries a filename to "&lt;prefix&gt;&lt;millis&gt;&lt;ext&gt;" in the
+     * directory and skips everything else. The file only appears under its final name once
+     * it is complete. Returns null if the body has no file part.
+     */
+    public UploadedFile saveFirstFile(Path directory, String prefix) throws IOException {
+        return saveFirstFile(directory, (partial, extension) -> {
+            Path target = directory.resolve(prefix + System.currentTimeMillis() + extension);
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+            return new CaptureStore.Commit(target, true);
+        });
+    }
+
+    /**
+     * Like {@link #saveFirstFile(Path, String)}, but the file is committed to the store under
+     * the hash of its bytes; an upload the store already has leaves no second copy.
+     */
+    public UploadedFile saveFirstFile(CaptureStore store) throws IOException {
+        return saveFirstFile(store.getDirectory(), store::commit);
+    }
+
+    private UploadedFile saveFirstFile(Path directory, Placement placement) throws IOException {
+        if (!skipPastDelimiter()) {
+            throw new IOException("Not a multipart body: boundary not found");
+        }
+
+        UploadedFile saved = null;
+        while (true) {
+            fill(2);
+            if (end - start < 2) {
+                throw new IOException("Upload ended inside a boundary");
+            }
+            if (buffer[start] == '-' && buffer[start + 1] == '-') {
+                return saved;
+            }
+            if (!startsWith(CRLF)) {
+                throw new IOException("Malformed multipart boundary line");
+            }
+            start += CRLF.length;
+
+            PartHeaders headers = readHeaders();
+            if (saved == null && headers.fileName() != null) {
+                saved = writePart(headers, directory, placement);
+            } else if (!skipPastDelimiter()) {
+                throw new IOException("Upload ended before the closing boundary");
+            }
+        }
+    }
+
+    private UploadedFile writePart(PartHeaders headers, Path directory, Placement placement) throws IOException {
+        Files.createDirectories(directory);
+        Path partial = Files.createTempFile(directory, ".upload-", ".part");
+        try {
+            long size;
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                size = copyUntilDelimiter(channel);
+                channel.force(true);
+            }
+            CaptureStore.Commit target = placement.place(partial, extensionFor(headers.fileName(), headers.contentType()));
+            return new UploadedFile(target.file(), size, headers.fileName(), headers.contentType(), target.created());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+    }
+
+    private PartHeaders readHeaders() throws IOException {
+        int headerEnd;
+        while ((headerEnd = indexOf(HEADER_END, start)) < 0) {
+            if (end - start > MAX_HEADER_BYTES) {
+                throw new IOException("Multipart part headers too large");
+            }
+            if (eof) {
+                throw new IOException("Upload ended inside part headers");
+            }
+            fill(end - start + 1);
+        }
+        String block = new String(buffer, start, headerEnd - start, StandardCharsets.UTF_8);
+        start = headerEnd + HEADER_END.length;
+
+        String fileName = null;
+        String contentType = null;
+        for (String line : block.split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (name.equals("content-type")) {
+                contentType = value;
+            } else if (name.equals("content-disposition")) {
+                fileName = parameter(value, "filename");
+            }
+        }
+        return new PartHeaders(fileName, contentType);
+    }
+
+    private static String parameter(String headerValue, String parameterName) {
+        for (String parameter : headerValue.split(";")) {
+            String trimmed = parameter.trim();
+            int equals = trimmed.indexOf('=');
+            if (equals > 0 && trimmed.substring(0, equals).trim().equalsIgnoreCase(parameterName)) {
+                String value = trimmed.substring(equals + 1).trim();
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    // Keeps a short, plain extension from the phone's file name; everything else is stored as .jpg
+    static String extensionFor(String fileName, String contentType) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot >= 0) {
+            String extension = fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+            if (!extension.isEmpty() && extension.length() <= 5 && extension.chars().allMatch(Character::isLetterOrDigit)) {
+                return "." + extension;
+            }
+        }
+        if (contentType != null && contentType.toLowerCase(Locale.ROOT).equals("image/png")) {
+            return ".png";
+        }
+        return DEFAULT_EXTENSION;
+    }
+
+    /**
+     * Streams the part body into the channel and consumes the delimiter that ends it.
+     */
+    private long copyUntilDelimiter(FileChannel channel) throws IOException {
+        long written = 0;
+        while (true) {
+            int found = indexOf(delimiter, start);
+            // Without a match, everything but a possible delimiter prefix at the end is part data
+            int safeEnd = found >= 0 ? found : Math.max(start, end - delimiter.length + 1);
+            if (safeEnd > start) {
+                written += safeEnd - start;
+                if (written > maxFileBytes) {
+                    throw new IOException("Upload larger than " + maxFileBytes / (1024 * 1024) + " MB");
+                }
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, start, safeEnd - start);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+                start = safeEnd;
+            }
+            if (found >= 0) {
+                start += delimiter.length;
+                return written;
+            }
+            if (eof) {
+                throw new IOException("Upload ended before the closing boundary");
+            }
+            fill(end - start + 1);
+        }
+    }
+
+    private boolean skipPastDelimiter() throws IOException {
+        while (true) {
+            int found = indexOf(delimiter, start);
+            if (found >= 0) {
+                start = found + delimiter.length;
+                return true;
+            }
+            start = Math.max(start, end - delimiter.length + 1);
+            if (eof) {
+                return false;
+            }
+            fill(end - start + 1);
+        }
+    }
+
+    /**
+     * Reads until at least the given number of unconsumed bytes are buffered, or the stream ends.
+     */
+    private void fill(int wanted) throws IOException {
+        if (start > 0 && end - start < wanted) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        while (!eof && end - start < wanted && end < buffer.length) {
+            int read = in.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                eof = true;
+            } else {
+                end += read;
+            }
+        }
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(byte[] pattern, int from) {
+        byte first = pattern[0];
+        int last = end - pattern.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            if (buffer[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < pattern.length; j++) {
+                if (buffer[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    // Gives a complete part file its final name
+    private interface Placement {
+        CaptureStore.Commit place(Path partial, String extension) throws IOException;
+    }
+
+    /**
+     * A saved upload. When created is false the store already had these bytes and the file is
+     * shared with earlier uploads, so it must not be deleted if this one is turned away.
+     */
+    public record UploadedFile(Path path, long size, String fileName, String contentType, boolean created) {
+
+        /**
+         * Removes the file of an upload that was turned away, unless it is shared.
+         */
+        public void discard() {
+            if (!created) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Could not remove rejected upload " + path.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private record PartHeaders(String fileName, String contentType) {
+    }
+}
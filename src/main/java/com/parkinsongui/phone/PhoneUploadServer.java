@@ -0,0 +1,190 @@
+package com.parkinsongui.phone;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The embedded HTTP server the phones talk to. Every exchange runs on its own virtual
+ * thread, so a phone uploading slowly over a weak Wi-Fi link never holds up the others,
+ * and each request is logged with its duration and the number of requests in flight.
+ *
+ * The listen backlog and the connection limit come from system properties, see
+ * {@link #BACKLOG_PROPERTY} and {@link #MAX_CONNECTIONS_PROPERTY}.
+ *
+ * With -Dparkinson.phone.https=true the server speaks https only, with a
+ * {@link SelfSignedCertificate self-signed certificate} for its address, so the page may use
+ * the phone camera for the live mode. Phones must accept the certificate warning once.
+ *
+ * A stopped server cannot be started again; {@link #bind} creates a fresh one on the same
+ * port, or on a free one if the port stays taken.
+ */
+public class PhoneUploadServer {
+    public static final String BACKLOG_PROPERTY = "parkinson.phone.backlog";
+    public static final String MAX_CONNECTIONS_PROPERTY = "parkinson.phone.maxConnections";
+    public static final String HTTPS_PROPERTY = "parkinson.phone.https";
+
+    // The JDK server's own connection cap; it is read once, when the first server is created
+    private static final String JDK_MAX_CONNECTIONS_PROPERTY = "sun.net.httpserver.maxConnections";
+    private static final int DEFAULT_BACKLOG = 64;
+    private static final int DEFAULT_MAX_CONNECTIONS = 32;
+    private static final int BIND_ATTEMPTS = 5;
+    private static final long BIND_RETRY_MILLIS = 200;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String url;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param keyStore where the https certificate is kept, or null for plain http
+     */
+    public PhoneUploadServer(String host, int port, Path keyStore) throws IOException {
+        int backlog = intProperty(BACKLOG_PROPERTY, DEFAULT_BACKLOG);
+        int maxConnections = intProperty(MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS);
+        if (System.getProperty(JDK_MAX_CONNECTIONS_PROPERTY) == null) {
+            System.setProperty(JDK_MAX_CONNECTIONS_PROPERTY, Integer.toString(maxConnections));
+        }
+
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        if (keyStore != null) {
+            HttpsServer https = HttpsServer.create(address, backlog);
+            https.setHttpsConfigurator(new HttpsConfigurator(SelfSignedCertificate.context(keyStore, host)));
+            server = https;
+        } else {
+            server = HttpServer.create(address, backlog);
+        }
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("phone-http-", 0).factory());
+        server.setExecutor(executor);
+        url = (keyStore != null ? "https://" : "http://") + host + ":" + server.getAddress().getPort();
+        System.out.println("Phone server: backlog " + backlog + ", up to "
+                + System.getProperty(JDK_MAX_CONNECTIONS_PROPERTY) + " connections");
+    }
+
+    /**
+     * Binds the preferred port, retrying briefly while a previous server or another program
+     * lets go of it, and falls back to any free port after that. The chosen port is part of
+     * {@link #getUrl}. The key store is used, and created if need be, when https is on.
+     */
+    public static PhoneUploadServer bind(String host, int preferredPort, Path keyStore) throws IOException {
+        Path tls = Boolean.getBoolean(HTTPS_PROPERTY) ? keyStore : null;
+        for (int attempt = 1; attempt <= BIND_ATTEMPTS; attempt++) {
+            try {
+                return new PhoneUploadServer(host, preferredPort, tls);
+            } catch (BindException e) {
+                if (attempt == BIND_ATTEMPTS) {
+                    System.err.println("Port " + preferredPort + " is in use (" + e.getMessage() + "), using a free port instead");
+                    break;
+                }
+                try {
+                    Thread.sleep(BIND_RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+        return new PhoneUploadServer(host, 0, tls);
+    }
+
+    static int intProperty(String name, int defaultValue) {
+        String configured = System.getProperty(name);
+        if (configured != null) {
+            try {
+                return Math.max(1, Integer.parseInt(configured.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid " + name + ": " + configured);
+            }
+        }
+        return defaultValue;
+    }
+
+    public void createContext(String path, HttpHandler handler) {
+        server.createContext(path, handler).getFilters().add(new TimingFilter());
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Server started: " + url);
+    }
+
+    /**
+     * Closes the listening socket at once; exchanges already running may finish.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        System.out.println("Server stopped: " + url);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public static String queryParameter(HttpExchange exchange, String name) {
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery == null) {
+            return null;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                return URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    public static void sendJson(HttpExchange exchange, int status, String response) throws IOException {
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    public static String errorJson(String message) {
+        return "{\"status\":\"error\",\"message\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+
+    private class TimingFilter extends Filter {
+
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            long start = System.nanoTime();
+            int concurrent = inFlight.incrementAndGet();
+            try {
+                chain.doFilter(exchange);
+            } finally {
+                inFlight.decrementAndGet();
+                String length = exchange.getRequestHeaders().getFirst("Content-Length");
+                System.out.println(String.format(Locale.ROOT, "[phone] %s %s %d from %s: %.1f ms%s, %d in flight",
+                        exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                        exchange.getResponseCode(), exchange.getRemoteAddress().getAddress().getHostAddress(),
+                        (System.nanoTime() - start) / 1_000_000.0,
+                        length == null || length.equals("0") ? "" : ", " + length + " bytes in", concurrent));
+            }
+        }
+
+        @Override
+        public String description() {
+            return "Logs each phone request with its duration";
+        }
+    }
+}
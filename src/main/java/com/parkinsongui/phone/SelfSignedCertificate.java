@@ -0,0 +1,206 @@
+package com.parkinsongui.phone;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * A self-signed certificate for the phone server's address, so the capture page can be served
+ * over https: browsers only offer the camera to secure pages. Phones warn about it the first
+ * time; the key store is kept, so the same certificate is offered again until the address
+ * changes or it is about to expire.
+ *
+ * The certificate is written out by hand in DER, which keeps this free of anything outside
+ * java.base.
+ */
+final class SelfSignedCertificate {
+    private static final String ALIAS = "phone";
+    // Only protects the file on this machine; anyone who can read it can read the folder anyway
+    private static final char[] PASSWORD = "parkinson-phone".toCharArray();
+    private static final long VALIDITY_DAYS = 825;
+    private static final String COMMON_NAME = "Parkinson phone capture";
+    private static final Pattern IP_LITERAL = Pattern.compile("[0-9.]+|.*:.*");
+    private static final DateTimeFormatter UTC_TIME = DateTimeFormatter.ofPattern("yyMMddHHmmss'Z'");
+
+    // DER tags
+    private static final int INTEGER = 0x02;
+    private static final int BIT_STRING = 0x03;
+    private static final int OCTET_STRING = 0x04;
+    private static final int NULL = 0x05;
+    private static final int OBJECT_IDENTIFIER = 0x06;
+    private static final int UTF8_STRING = 0x0C;
+    private static final int UTC_TIME_TAG = 0x17;
+    private static final int SEQUENCE = 0x30;
+    private static final int SET = 0x31;
+
+    private SelfSignedCertificate() {
+    }
+
+    /**
+     * A TLS context presenting the certificate kept in the key store file, made first if the
+     * file is missing, unreadable, expiring or for another address.
+     */
+    static SSLContext context(Path keyStoreFile, String host) throws IOException {
+        try {
+            KeyStore keyStore = load(keyStoreFile, host);
+            if (keyStore == null) {
+                System.out.println("Creating a self-signed certificate for " + host);
+                keyStore = create(host);
+                save(keyStore, keyStoreFile);
+            }
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(keyStore, PASSWORD);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagers.getKeyManagers(), null, null);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not set up https for the phone server: " + e.getMessage(), e);
+        }
+    }
+
+    private static KeyStore load(Path file, String host) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(in, PASSWORD);
+            X509Certificate certificate = (X509Certificate) keyStore.getCertificate(ALIAS);
+            if (certificate == null || !keyStore.isKeyEntry(ALIAS)) {
+                return null;
+            }
+            certificate.checkValidity(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+            Collection<List<?>> names = certificate.getSubjectAlternativeNames();
+            if (names == null || names.stream().noneMatch(name -> host.equals(name.get(1)))) {
+                return null;
+            }
+            return keyStore;
+        } catch (IOException | GeneralSecurityException e) {
+            System.err.println("Replacing the phone server certificate: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void save(KeyStore keyStore, Path file) throws IOException, GeneralSecurityException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            keyStore.store(out, PASSWORD);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static KeyStore create(String host) throws IOException, GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keys = generator.generateKeyPair();
+
+        byte[] signatureAlgorithm = der(SEQUENCE, oid("1.2.840.113549.1.1.11"), der(NULL));
+        byte[] name = der(SEQUENCE, der(SET, der(SEQUENCE,
+                oid("2.5.4.3"), der(UTF8_STRING, COMMON_NAME.getBytes(StandardCharsets.UTF_8)))));
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        byte[] validity = der(SEQUENCE, utcTime(now.minusDays(1)), utcTime(now.plusDays(VALIDITY_DAYS)));
+
+        // IP address [7] or DNS name [2], whichever the phones are told to open
+        byte[] alternativeName = IP_LITERAL.matcher(host).matches()
+                ? der(0x87, InetAddress.getByName(host).getAddress())
+                : der(0x82, host.getBytes(StandardCharsets.US_ASCII));
+        byte[] extensions = der(0xA3, der(SEQUENCE,
+                der(SEQUENCE, oid("2.5.29.17"), der(OCTET_STRING, der(SEQUENCE, alternativeName))),
+                der(SEQUENCE, oid("2.5.29.37"), der(OCTET_STRING, der(SEQUENCE, oid("1.3.6.1.5.5.7.3.1"))))));
+
+        byte[] serial = new BigInteger(63, new SecureRandom()).add(BigInteger.ONE).toByteArray();
+        byte[] toBeSigned = der(SEQUENCE,
+                der(0xA0, der(INTEGER, new byte[]{2})),
+                der(INTEGER, serial),
+                signatureAlgorithm,
+                name,
+                validity,
+                name,
+                keys.getPublic().getEncoded(),
+                extensions);
+
+        Signature signer = Signature.getInstance("SHA256withRSA");
+        signer.initSign(keys.getPrivate());
+        signer.update(toBeSigned);
+        byte[] signature = signer.sign();
+        byte[] bits = new byte[signature.length + 1];
+        System.arraycopy(signature, 0, bits, 1, signature.length);
+
+        byte[] encoded = der(SEQUENCE, toBeSigned, signatureAlgorithm, der(BIT_STRING, bits));
+        Certificate certificate = CertificateFactory.getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(encoded));
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry(ALIAS, keys.getPrivate(), PASSWORD, new Certificate[]{certificate});
+        return keyStore;
+    }
+
+    private static byte[] utcTime(ZonedDateTime time) {
+        return der(UTC_TIME_TAG, UTC_TIME.format(time).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] oid(String dotted) {
+        String[] parts = dotted.split("\\.");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(Integer.parseInt(parts[0]) * 40 + Integer.parseInt(parts[1]));
+        for (int i = 2; i < parts.length; i++) {
+            long value = Long.parseLong(parts[i]);
+            int groups = Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 6) / 7);
+            for (int group = groups - 1; group >= 0; group--) {
+                int bits = (int) (value >>> (7 * group)) & 0x7F;
+                out.write(group > 0 ? bits | 0x80 : bits);
+            }
+        }
+        return der(OBJECT_IDENTIFIER, out.toByteArray());
+    }
+
+    private static byte[] der(int tag, byte[]... contents) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (byte[] content : contents) {
+            body.writeBytes(content);
+        }
+        int length = body.size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 6);
+        out.write(tag);
+        if (length < 0x80) {
+            out.write(length);
+        } else {
+            int bytes = (32 - Integer.numberOfLeadingZeros(length) + 7) / 8;
+            out.write(0x80 | bytes);
+            for (int i = bytes - 1; i >= 0; i--) {
+                out.write(length >>> (8 * i));
+            }
+        }
+        out.writeBytes(body.toByteArray());
+        return out.toByteArray();
+    }
+}
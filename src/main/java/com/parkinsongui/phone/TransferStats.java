@@ -0,0 +1,47 @@
+package com.parkinsongui.phone;
+
+import java.util.Locale;
+
+/**
+ * Bytes the phones would have sent as taken versus what they actually transmitted after
+ * shrinking the photo on the device.
+ */
+public class TransferStats {
+    private int uploads;
+    private long originalBytes;
+    private long transmittedBytes;
+
+    /**
+     * Adds one upload. When the page did not report an original size, the file was sent as is.
+     */
+    public synchronized Snapshot record(long originalBytes, long transmittedBytes) {
+        uploads++;
+        this.originalBytes += Math.max(originalBytes, transmittedBytes);
+        this.transmittedBytes += transmittedBytes;
+        return snapshot();
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(uploads, originalBytes, transmittedBytes);
+    }
+
+    public record Snapshot(int uploads, long originalBytes, long transmittedBytes) {
+
+        public double savedPercent() {
+            return originalBytes == 0 ? 0 : 100.0 * (originalBytes - transmittedBytes) / originalBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d upload(s): %s sent of %s taken (%.0f%% saved)",
+                    uploads, formatBytes(transmittedBytes), formatBytes(originalBytes), savedPercent());
+        }
+    }
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.0f KB", bytes / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024));
+    }
+}
@@ -8,6 +8,7 @@ module com.parkinsongui {
     requires jdk.httpserver;
     requires com.google.zxing;
     requires javax.jmdns;
+    requires com.microsoft.onnxruntime;
 
     exports com.parkinsongui;
 }
\ No newline at end of file